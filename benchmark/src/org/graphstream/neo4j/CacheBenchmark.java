@@ -0,0 +1,120 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.graphstream.neo4j.tools.Cache;
+import org.graphstream.neo4j.tools.CacheCreationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of {@link Cache#get(Object)} when the key is cached and when it is
+ * not, with several threads using the same cache. Misses pay a fixed amount
+ * of work, standing for the index lookup done by the caches of the proxy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+	@Param({ "10000" })
+	int capacity;
+
+	/**
+	 * Work done to create a missing object, in JMH tokens.
+	 */
+	@Param({ "1000" })
+	int missCost;
+
+	Cache<String, String> cache;
+	String[] cached;
+	String[] missing;
+
+	@Setup
+	public void setUp() throws CacheCreationException {
+		cache = new Cache<String, String>(capacity) {
+			protected String createObject(String key) {
+				Blackhole.consumeCPU(missCost);
+				return key;
+			}
+		};
+
+		//
+		// Half of the capacity is used, so that cached keys are never
+		// evicted whatever their segment.
+		//
+		cached = new String[capacity / 2];
+		missing = new String[capacity * 100];
+
+		for (int i = 0; i < cached.length; i++) {
+			cached[i] = "hit" + i;
+			cache.get(cached[i]);
+		}
+
+		for (int i = 0; i < missing.length; i++)
+			missing[i] = "miss" + i;
+	}
+
+	@State(Scope.Thread)
+	public static class Keys {
+		final Random random = new Random();
+
+		int next(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Benchmark
+	public String hit(Keys keys) throws CacheCreationException {
+		return cache.get(cached[keys.next(cached.length)]);
+	}
+
+	@Benchmark
+	public String miss(Keys keys) throws CacheCreationException {
+		return cache.get(missing[keys.next(missing.length)]);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.graphstream.stream.db.DatabaseProxy;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a commit when the proxy turns it into events in
+ * {@link Neo4JProxy#afterCommit(org.neo4j.graphdb.event.TransactionData, Object)}
+ * and dispatches them, either from the committing thread or through the
+ * asynchronous dispatcher. Comparing the results without and with a sink
+ * gives the cost of the emission itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommitBenchmark {
+	@Param({ "twitter", "drwho" })
+	String dataset;
+
+	/**
+	 * Number of properties changed by each transaction.
+	 */
+	@Param({ "1", "100" })
+	int changes;
+
+	@Param({ "false", "true" })
+	boolean sink;
+
+	/**
+	 * SYNC to send the events from the committing thread, or the name of an
+	 * overflow policy of the dispatcher.
+	 */
+	@Param({ "SYNC", "BLOCK", "COALESCE" })
+	String dispatch;
+
+	File store;
+	Neo4JProxy proxy;
+	Node[] nodes;
+	int next;
+	long value;
+
+	@Setup
+	public void setUp() throws Exception {
+		store = Datasets.copy(dataset);
+		proxy = new Neo4JProxy();
+		proxy.connect(store.getPath(), DatabaseProxy.Mode.READ_ONLY);
+
+		if (!dispatch.equals("SYNC"))
+			proxy.setAsyncDispatch(EventDispatcher.DEFAULT_CAPACITY,
+					EventDispatcher.OverflowPolicy.valueOf(dispatch));
+
+		if (sink)
+			proxy.addSink(new EventCounter());
+
+		ArrayList<Node> l = new ArrayList<Node>();
+
+		for (Node n : GlobalGraphOperations.at(proxy.graphDb).getAllNodes())
+			l.add(n);
+
+		nodes = l.toArray(new Node[l.size()]);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		proxy.setAsyncDispatch(0, null);
+		proxy.disconnect();
+		Datasets.delete(store);
+	}
+
+	@Benchmark
+	public void commit() {
+		Transaction tx = proxy.graphDb.beginTx();
+
+		try {
+			for (int i = 0; i < changes; i++)
+				nodes[next++ % nodes.length].setProperty("benchmark", value++);
+
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+	}
+}
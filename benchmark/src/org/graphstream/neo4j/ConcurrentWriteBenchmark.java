@@ -0,0 +1,143 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graphstream.stream.db.DatabaseProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the proxy fed by several sources from different threads,
+ * each one writing its own part of the graph. Comparing one and four writers
+ * shows how writes to disjoint elements scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentWriteBenchmark {
+	@Param({ "twitter" })
+	String dataset;
+
+	/**
+	 * Mode of the connection. Commits are sent back to a sink when reading.
+	 */
+	@Param({ "WRITE_ONLY", "READ_WRITE" })
+	String mode;
+
+	File store;
+	Neo4JProxy proxy;
+	EventCounter counter;
+	final AtomicInteger writers = new AtomicInteger();
+
+	@Setup
+	public void setUp() throws Exception {
+		store = Datasets.copy(dataset);
+		counter = new EventCounter();
+		proxy = new Neo4JProxy();
+		proxy.addSink(counter);
+		proxy.connect(store.getPath(), DatabaseProxy.Mode.valueOf(mode));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		proxy.disconnect();
+		Datasets.delete(store);
+	}
+
+	/**
+	 * A source writing its own nodes.
+	 */
+	@State(Scope.Thread)
+	public static class Writer {
+		String source;
+		String anchor;
+		long timeId;
+		long nextId;
+
+		@Setup
+		public void setUp(ConcurrentWriteBenchmark b) {
+			source = "writer-" + b.writers.incrementAndGet();
+			anchor = source + "-anchor";
+
+			b.proxy.nodeAdded(source, timeId++, anchor);
+		}
+
+		void nodeAdded(Neo4JProxy proxy) {
+			proxy.nodeAdded(source, timeId++, source + "-" + nextId++);
+		}
+
+		void nodeAttributeChanged(Neo4JProxy proxy) {
+			proxy.nodeAttributeChanged(source, timeId++, anchor, "value",
+					null, timeId);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void nodeAdded1(Writer w) {
+		w.nodeAdded(proxy);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void nodeAdded4(Writer w) {
+		w.nodeAdded(proxy);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void nodeAttributeChanged1(Writer w) {
+		w.nodeAttributeChanged(proxy);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void nodeAttributeChanged4(Writer w) {
+		w.nodeAttributeChanged(proxy);
+	}
+}
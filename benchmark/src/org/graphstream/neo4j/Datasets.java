@@ -0,0 +1,117 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies of the stores bundled with the project, so that the benchmarks never
+ * modify the originals. The datasets are looked up in the directory given by
+ * the "gs.dataset.dir" system property, "dataset" by default, that is the
+ * dataset directory of the project when the benchmarks are run from the
+ * project directory.
+ */
+final class Datasets {
+	static final String DIR_PROPERTY = "gs.dataset.dir";
+
+	private Datasets() {
+	}
+
+	/**
+	 * Copy a dataset to a new temporary directory.
+	 * 
+	 * @param name
+	 *            name of the dataset, "twitter" or "drwho"
+	 * @return the directory of the copy
+	 */
+	static File copy(String name) throws IOException {
+		File src = new File(System.getProperty(DIR_PROPERTY, "dataset"),
+				name);
+
+		if (!src.isDirectory())
+			throw new FileNotFoundException(src.getPath());
+
+		File dst = File.createTempFile("gs-neo4j-" + name + "-", "");
+
+		if (!dst.delete())
+			throw new IOException("can not create " + dst);
+
+		copy(src, dst);
+
+		return dst;
+	}
+
+	/**
+	 * Delete a copy of a dataset.
+	 */
+	static void delete(File f) {
+		File[] children = f.listFiles();
+
+		if (children != null)
+			for (File c : children)
+				delete(c);
+
+		f.delete();
+	}
+
+	private static void copy(File src, File dst) throws IOException {
+		if (src.isDirectory()) {
+			if (!dst.mkdirs())
+				throw new IOException("can not create " + dst);
+
+			for (String name : src.list())
+				copy(new File(src, name), new File(dst, name));
+		} else {
+			InputStream in = new FileInputStream(src);
+
+			try {
+				OutputStream out = new FileOutputStream(dst);
+
+				try {
+					byte[] buffer = new byte[1 << 16];
+					int r;
+
+					while ((r = in.read(buffer)) > 0)
+						out.write(buffer, 0, r);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import org.graphstream.stream.SinkAdapter;
+
+/**
+ * A sink counting the events it receives, standing for a real sink without
+ * adding its cost to the measures.
+ */
+class EventCounter extends SinkAdapter {
+	long events;
+
+	/**
+	 * Get the number of events received since the last call.
+	 */
+	long reset() {
+		long e = events;
+		events = 0;
+		return e;
+	}
+
+	@Override
+	public void nodeAdded(String sourceId, long timeId, String nodeId) {
+		events++;
+	}
+
+	@Override
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		events++;
+	}
+
+	@Override
+	public void edgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		events++;
+	}
+
+	@Override
+	public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+		events++;
+	}
+
+	@Override
+	public void nodeAttributeAdded(String sourceId, long timeId,
+			String nodeId, String attribute, Object value) {
+		events++;
+	}
+
+	@Override
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		events++;
+	}
+
+	@Override
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			String nodeId, String attribute) {
+		events++;
+	}
+
+	@Override
+	public void edgeAttributeAdded(String sourceId, long timeId,
+			String edgeId, String attribute, Object value) {
+		events++;
+	}
+
+	@Override
+	public void edgeAttributeChanged(String sourceId, long timeId,
+			String edgeId, String attribute, Object oldValue, Object newValue) {
+		events++;
+	}
+
+	@Override
+	public void edgeAttributeRemoved(String sourceId, long timeId,
+			String edgeId, String attribute) {
+		events++;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.graphstream.stream.db.DatabaseProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of the sink events written to the store by the proxy, with one
+ * transaction per event and with group commit. Latencies are sampled, so the
+ * results give their distribution and not only their mean.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+	static final String SOURCE = "benchmark";
+	static final String ANCHOR = "benchmark-anchor";
+
+	@Param({ "twitter" })
+	String dataset;
+
+	/**
+	 * Maximum number of events in a transaction.
+	 */
+	@Param({ "1", "100" })
+	int batch;
+
+	File store;
+	Neo4JProxy proxy;
+	long timeId;
+	long nextId;
+
+	@Setup
+	public void setUp() throws Exception {
+		store = Datasets.copy(dataset);
+		proxy = new Neo4JProxy();
+		proxy.setGroupCommit(batch, 100);
+		proxy.connect(store.getPath(), DatabaseProxy.Mode.WRITE_ONLY);
+
+		proxy.nodeAdded(SOURCE, timeId++, ANCHOR);
+		proxy.flush();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		proxy.disconnect();
+		Datasets.delete(store);
+	}
+
+	@Benchmark
+	public void nodeAdded() {
+		proxy.nodeAdded(SOURCE, timeId++, "benchmark-" + nextId++);
+	}
+
+	@Benchmark
+	public void nodeAttributeChanged() {
+		proxy.nodeAttributeChanged(SOURCE, timeId++, ANCHOR, "value", null,
+				timeId);
+	}
+}
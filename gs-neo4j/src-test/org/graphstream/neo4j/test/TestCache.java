@@ -0,0 +1,102 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graphstream.neo4j.tools.Cache;
+import org.junit.Test;
+
+/**
+ * Check that a key missed by several threads at the same time is created once
+ * and then cached.
+ */
+public class TestCache {
+	static final int THREADS = 8;
+	static final int KEYS = 500;
+
+	@Test(timeout = 60000)
+	public void testConcurrentMisses() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		//
+		// The keys are not spread evenly over the segments, the capacity is
+		// large enough for none of them to be evicted.
+		//
+		final Cache<Integer, String> cache = new Cache<Integer, String>(
+				KEYS * 16) {
+			protected String createObject(Integer key) {
+				created.incrementAndGet();
+				return key.toString();
+			}
+		};
+
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[THREADS];
+
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int k = 0; k < KEYS; k++) {
+							barrier.await();
+							assertEquals(Integer.toString(k), cache.get(k));
+						}
+					} catch (Throwable e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+
+						barrier.reset();
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		for (Thread t : threads)
+			t.join();
+
+		assertEquals(null, failure[0]);
+		assertEquals(KEYS, created.get());
+
+		//
+		// Every key is cached, none is created again.
+		//
+		for (int k = 0; k < KEYS; k++)
+			assertEquals(Integer.toString(k), cache.get(k));
+
+		assertEquals(KEYS, created.get());
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.graphstream.neo4j.Neo4JProxy;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.db.DatabaseProxy.Mode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check that the history stamps the writes with their step when writes are
+ * committed in batches.
+ */
+public class TestHistory {
+	File dir;
+	Neo4JProxy proxy;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("gs-neo4j-test-", "");
+		dir.delete();
+		dir.mkdirs();
+
+		proxy = new Neo4JProxy();
+		proxy.setHistoryEnabled(true, 0);
+		proxy.connect(dir.getPath(), Mode.READ_WRITE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (proxy != null)
+			proxy.disconnect();
+
+		TestStoreServer.delete(dir);
+	}
+
+	@Test
+	public void testGroupCommitSteps() throws Exception {
+		proxy.setGroupCommit(1000, 0);
+
+		proxy.nodeAdded("test", 0, "a");
+		proxy.stepBegins("test", 1, 1);
+		proxy.nodeAdded("test", 2, "b");
+		proxy.stepBegins("test", 3, 2);
+		proxy.nodeAdded("test", 4, "c");
+		proxy.flush();
+
+		assertEquals(Arrays.asList("a"), replay(Double.NEGATIVE_INFINITY, 0));
+		assertEquals(Arrays.asList("step 1.0", "b"), replay(1, 1));
+		assertEquals(Arrays.asList("step 2.0", "c"), replay(2, 2));
+	}
+
+	/**
+	 * The steps and the nodes added in the history between two steps.
+	 */
+	ArrayList<String> replay(double from, double to) throws Exception {
+		final ArrayList<String> events = new ArrayList<String>();
+
+		proxy.replayHistory(from, to, new SinkAdapter() {
+			public void nodeAdded(String sourceId, long timeId, String nodeId) {
+				events.add(nodeId);
+			}
+
+			public void stepBegins(String sourceId, long timeId, double step) {
+				events.add("step " + step);
+			}
+		});
+
+		return events;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.graphstream.neo4j.Neo4JProxy;
+import org.graphstream.neo4j.StoreClient;
+import org.graphstream.neo4j.StoreServer;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.db.DatabaseProxy.Mode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Serve a store over the loopback interface while it is written, and check
+ * that the client ends with the graph of the store.
+ */
+public class TestStoreServer {
+	static final int NODES = 2000;
+	static final int CHANGES = 500;
+
+	File dir;
+	Neo4JProxy proxy;
+	StoreServer server;
+	StoreClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("gs-neo4j-test-", "");
+		dir.delete();
+		dir.mkdirs();
+
+		proxy = new Neo4JProxy();
+		proxy.connect(dir.getPath(), Mode.READ_WRITE);
+
+		long time = 0;
+
+		for (int i = 0; i < NODES; i++) {
+			proxy.nodeAdded("setup", time++, "n" + i);
+			proxy.nodeAttributeAdded("setup", time++, "n" + i, "weight", i);
+		}
+
+		for (int i = 0; i < NODES; i++)
+			proxy.edgeAdded("setup", time++, "e" + i, "n" + i, "n"
+					+ ((i + 1) % NODES), false);
+
+		server = new StoreServer(proxy, 0);
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (client != null)
+			client.close();
+
+		if (server != null)
+			server.stop();
+
+		if (proxy != null)
+			proxy.disconnect();
+
+		delete(dir);
+	}
+
+	@Test(timeout = 120000)
+	public void testChangesDuringFlush() throws Exception {
+		Mirror received = new Mirror();
+
+		client = new StoreClient("localhost", server.getPort());
+		client.addSink(received);
+
+		//
+		// The changes are committed while the server reads the store for
+		// the client.
+		//
+		Thread writer = new Thread() {
+			public void run() {
+				long time = 0;
+
+				for (int i = 0; i < CHANGES; i++) {
+					proxy.nodeAttributeChanged("writer", time++, "n" + i,
+							"weight", i, -i);
+
+					if (i % 3 == 0)
+						proxy.nodeRemoved("writer", time++, "n" + (NODES - i
+								- 1));
+
+					proxy.nodeAdded("writer", time++, "m" + i);
+
+					if (i > 0)
+						proxy.edgeAdded("writer", time++, "f" + i,
+								"m" + (i - 1), "m" + i, false);
+				}
+			}
+		};
+
+		client.connect();
+		writer.start();
+		writer.join();
+
+		Mirror expected = store();
+
+		while (!received.equals(expected))
+			assertTrue("connection closed", client.nextEvents());
+
+		assertEquals(0L, server.getDroppedCount());
+		assertTrue(received.nodes.containsKey("m" + (CHANGES - 1)));
+		assertFalse(received.nodes.containsKey("n" + (NODES - 1)));
+		assertEquals(-1, received.nodes.get("n1").get("weight"));
+	}
+
+	/**
+	 * The graph of the store, read by a flush.
+	 */
+	Mirror store() throws Exception {
+		Mirror m = new Mirror();
+		proxy.flushDB(m);
+		return m;
+	}
+
+	static void delete(File f) throws IOException {
+		File[] files = f.listFiles();
+
+		if (files != null)
+			for (File c : files)
+				delete(c);
+
+		f.delete();
+	}
+
+	/**
+	 * A copy of the graph received by a sink. An element added twice, or the
+	 * removal of an unknown element, fails the test.
+	 */
+	static class Mirror extends SinkAdapter {
+		final HashMap<String, HashMap<String, Object>> nodes = new HashMap<String, HashMap<String, Object>>();
+		final HashMap<String, HashMap<String, Object>> edges = new HashMap<String, HashMap<String, Object>>();
+		final HashMap<String, String> ends = new HashMap<String, String>();
+
+		public void nodeAdded(String sourceId, long timeId, String nodeId) {
+			assertNull("node added twice: " + nodeId, nodes.put(nodeId,
+					new HashMap<String, Object>()));
+		}
+
+		public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+			assertTrue("unknown node removed: " + nodeId,
+					nodes.remove(nodeId) != null);
+
+			for (String edgeId : ends.keySet().toArray(new String[0])) {
+				String[] e = ends.get(edgeId).split(" ");
+
+				if (e[0].equals(nodeId) || e[1].equals(nodeId)) {
+					ends.remove(edgeId);
+					edges.remove(edgeId);
+				}
+			}
+		}
+
+		public void edgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			assertTrue("edge of unknown nodes: " + edgeId, nodes
+					.containsKey(fromNodeId)
+					&& nodes.containsKey(toNodeId));
+			assertNull("edge added twice: " + edgeId, edges.put(edgeId,
+					new HashMap<String, Object>()));
+			ends.put(edgeId, fromNodeId + " " + toNodeId);
+		}
+
+		public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+			assertTrue("unknown edge removed: " + edgeId,
+					edges.remove(edgeId) != null);
+			ends.remove(edgeId);
+		}
+
+		public void graphCleared(String sourceId, long timeId) {
+			nodes.clear();
+			edges.clear();
+			ends.clear();
+		}
+
+		public void nodeAttributeAdded(String sourceId, long timeId,
+				String nodeId, String attribute, Object value) {
+			nodes.get(nodeId).put(attribute, value);
+		}
+
+		public void nodeAttributeChanged(String sourceId, long timeId,
+				String nodeId, String attribute, Object oldValue,
+				Object newValue) {
+			nodes.get(nodeId).put(attribute, newValue);
+		}
+
+		public void nodeAttributeRemoved(String sourceId, long timeId,
+				String nodeId, String attribute) {
+			nodes.get(nodeId).remove(attribute);
+		}
+
+		public void edgeAttributeAdded(String sourceId, long timeId,
+				String edgeId, String attribute, Object value) {
+			edges.get(edgeId).put(attribute, value);
+		}
+
+		public void edgeAttributeChanged(String sourceId, long timeId,
+				String edgeId, String attribute, Object oldValue,
+				Object newValue) {
+			edges.get(edgeId).put(attribute, newValue);
+		}
+
+		public void edgeAttributeRemoved(String sourceId, long timeId,
+				String edgeId, String attribute) {
+			edges.get(edgeId).remove(attribute);
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Mirror))
+				return false;
+
+			Mirror m = (Mirror) o;
+
+			return nodes.equals(m.nodes) && edges.equals(m.edges)
+					&& ends.equals(m.ends);
+		}
+
+		public int hashCode() {
+			return nodes.hashCode();
+		}
+
+		public String toString() {
+			return String.format("%d nodes, %d edges", nodes.size(), edges
+					.size());
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import org.neo4j.graphdb.PropertyContainer;
+
+/**
+ * Decide which properties of the store are forwarded as attributes by a
+ * {@link Neo4JProxy}, both when the store is flushed and when a commit is
+ * propagated to the sinks.
+ * 
+ * @see Neo4JProxy#setAttributeFilter(AttributeFilter)
+ */
+public interface AttributeFilter {
+	/**
+	 * Tell if a property of a node or a relationship should be sent to the
+	 * sinks. The value of the property should not be read here, rejecting it
+	 * is what saves the read.
+	 * 
+	 * @param element
+	 *            the node or the relationship
+	 * @param key
+	 *            key of the property
+	 * @return true if the property is sent as an attribute
+	 */
+	boolean accept(PropertyContainer element, String key);
+}
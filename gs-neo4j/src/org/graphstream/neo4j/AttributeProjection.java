@@ -0,0 +1,146 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+import org.neo4j.graphdb.PropertyContainer;
+
+/**
+ * The properties a proxy forwards as attributes: a whitelist, a blacklist and
+ * an optional filter, applied in this order. The "id" property is never
+ * forwarded. Projections are immutable, the proxy replaces its projection
+ * when it is configured.
+ */
+class AttributeProjection {
+	static final AttributeProjection ALL = new AttributeProjection(null, null,
+			null);
+
+	/**
+	 * Keys which are forwarded, or null if all keys can be.
+	 */
+	protected final LinkedHashSet<String> whitelist;
+	protected final HashSet<String> blacklist;
+	protected final AttributeFilter filter;
+
+	/**
+	 * Create a projection. An empty list is the same as no list at all: an
+	 * empty whitelist lets all the keys through.
+	 */
+	AttributeProjection(String[] whitelist, String[] blacklist,
+			AttributeFilter filter) {
+		this.whitelist = whitelist == null || whitelist.length == 0 ? null
+				: new LinkedHashSet<String>(Arrays.asList(whitelist));
+		this.blacklist = blacklist == null || blacklist.length == 0 ? null
+				: new HashSet<String>(Arrays.asList(blacklist));
+		this.filter = filter;
+	}
+
+	AttributeProjection withWhitelist(String[] keys) {
+		return new AttributeProjection(keys, toArray(blacklist), filter);
+	}
+
+	AttributeProjection withBlacklist(String[] keys) {
+		return new AttributeProjection(toArray(whitelist), keys, filter);
+	}
+
+	AttributeProjection withFilter(AttributeFilter f) {
+		return new AttributeProjection(toArray(whitelist),
+				toArray(blacklist), f);
+	}
+
+	/**
+	 * Tell if a property changed by a commit is forwarded.
+	 */
+	boolean accept(PropertyContainer pc, String key) {
+		return acceptKey(key) && (filter == null || filter.accept(pc, key));
+	}
+
+	/**
+	 * Tell if a key passes the whitelist and the blacklist.
+	 */
+	boolean acceptKey(String key) {
+		if (key.equals("id"))
+			return false;
+
+		if (whitelist != null && !whitelist.contains(key))
+			return false;
+
+		return blacklist == null || !blacklist.contains(key);
+	}
+
+	/**
+	 * Tell if the projection depends on the elements, and not only on the
+	 * keys.
+	 */
+	boolean hasFilter() {
+		return filter != null;
+	}
+
+	/**
+	 * Keys of the forwarded properties of an element. With a whitelist, only
+	 * the whitelisted keys are looked up, the other properties are not even
+	 * listed.
+	 */
+	String[] keys(PropertyContainer pc) {
+		ArrayList<String> keys = new ArrayList<String>();
+
+		if (whitelist != null) {
+			for (String key : whitelist)
+				if (pc.hasProperty(key) && accept(pc, key))
+					keys.add(key);
+		} else {
+			for (String key : pc.getPropertyKeys())
+				if (accept(pc, key))
+					keys.add(key);
+		}
+
+		return keys.toArray(new String[keys.size()]);
+	}
+
+	/**
+	 * Read the values of the forwarded properties of an element.
+	 */
+	Object[] values(PropertyContainer pc, String[] keys) {
+		Object[] values = new Object[keys.length];
+
+		for (int i = 0; i < keys.length; i++)
+			values[i] = pc.getProperty(keys[i]);
+
+		return values;
+	}
+
+	private static String[] toArray(HashSet<String> keys) {
+		return keys == null ? null : keys.toArray(new String[keys.size()]);
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.neo4j.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+
+/**
+ * Write GraphStream events in a store through the non-transactional batch
+ * inserter of Neo4j. This is used by {@link Neo4JProxy} in the
+ * {@link org.graphstream.stream.db.DatabaseProxy.Mode#BULK_LOAD} mode.
+ * 
+ * The loader keeps the database ids of the elements it has created, so adding
+ * an edge never needs to look its nodes up. Elements which were in the store
+ * before the load are looked up in the id indexes.
+ * 
+ * The batch inserter can not delete anything, removal events are ignored. It
+ * is not thread-safe either, so events are loaded one at a time.
+ * 
+ * Changes of the id property rename the element, as in the embedded mode: the
+ * id index and the ids kept by the loader follow the new value.
+ */
+class BulkLoader {
+	protected final BatchInserter inserter;
+	protected final BatchInserterIndexProvider indexProvider;
+	protected final BatchInserterIndex nodeIndex;
+	protected final BatchInserterIndex edgeIndex;
+
+	protected final HashMap<String, Long> nodes;
+	protected final HashMap<String, Long> edges;
+
+	BulkLoader(String dbPath) {
+		boolean newStore = !new File(dbPath, "neostore").exists();
+
+		//
+		// The batch inserter does not go through transactions, the id
+		// dictionaries and the snapshot would not be seen as stale. They are
+		// rebuilt from the store. The change log and the history can not be,
+		// the proxy does not bulk load a store which has one.
+		//
+		IdDictionary.delete(new File(dbPath), Neo4JProxy.NODE_DICTIONARY);
+		IdDictionary.delete(new File(dbPath), Neo4JProxy.EDGE_DICTIONARY);
+		new File(dbPath, Snapshot.FILE_NAME).delete();
+
+		HashMap<String, String> config = new HashMap<String, String>();
+
+		config.put("provider", "lucene");
+		config.put("type", "exact");
+
+		//
+		// The indexes of a new store are complete once the load is done. For
+		// an existing store, indexes keep their configuration and are rebuilt
+		// on connect if they were not ready.
+		//
+		if (newStore)
+			config.put(Neo4JProxy.INDEX_READY_KEY, "true");
+
+		inserter = BatchInserters.inserter(dbPath);
+		indexProvider = new LuceneBatchInserterIndexProvider(inserter);
+		nodeIndex = indexProvider.nodeIndex(Neo4JProxy.NODE_INDEX, config);
+		edgeIndex = indexProvider.relationshipIndex(Neo4JProxy.EDGE_INDEX,
+				config);
+
+		nodes = new HashMap<String, Long>();
+		edges = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Flush the indexes and close the store. The store can then be opened
+	 * with the embedded database.
+	 */
+	synchronized void shutdown() {
+		indexProvider.shutdown();
+		inserter.shutdown();
+	}
+
+	synchronized void nodeAdded(String nodeId) {
+		Map<String, Object> props = Collections.<String, Object> singletonMap(
+				"id", nodeId);
+		long id = inserter.createNode(props);
+
+		nodeIndex.add(id, props);
+		nodes.put(nodeId, id);
+	}
+
+	synchronized void edgeAdded(String edgeId, String fromNodeId, String toNodeId,
+			boolean directed) {
+		long src = getNode(fromNodeId);
+		long trg = getNode(toNodeId);
+
+		if (src < 0 || trg < 0) {
+			System.err.printf("unknown node '%s'\n", src < 0 ? fromNodeId
+					: toNodeId);
+			return;
+		}
+
+		Map<String, Object> props = Collections.<String, Object> singletonMap(
+				"id", edgeId);
+		long id = inserter.createRelationship(src, trg,
+				directed ? Neo4JRelationshipType.DIRECTED
+						: Neo4JRelationshipType.UNDIRECTED, props);
+
+		edgeIndex.add(id, props);
+		edges.put(edgeId, id);
+	}
+
+	synchronized void nodeAttributeChanged(String nodeId, String attribute, Object value) {
+		long id = getNode(nodeId);
+
+		if (id < 0)
+			return;
+
+		inserter.setNodeProperty(id, attribute, value);
+
+		if (attribute.equals("id"))
+			rename(nodeIndex, nodes, nodeId, id, value);
+	}
+
+	synchronized void nodeAttributeRemoved(String nodeId, String attribute) {
+		long id = getNode(nodeId);
+
+		if (id < 0)
+			return;
+
+		inserter.removeNodeProperty(id, attribute);
+
+		if (attribute.equals("id"))
+			rename(nodeIndex, nodes, nodeId, id, null);
+	}
+
+	synchronized void edgeAttributeChanged(String edgeId, String attribute, Object value) {
+		long id = getEdge(edgeId);
+
+		if (id < 0)
+			return;
+
+		inserter.setRelationshipProperty(id, attribute, value);
+
+		if (attribute.equals("id"))
+			rename(edgeIndex, edges, edgeId, id, value);
+	}
+
+	synchronized void edgeAttributeRemoved(String edgeId, String attribute) {
+		long id = getEdge(edgeId);
+
+		if (id < 0)
+			return;
+
+		inserter.removeRelationshipProperty(id, attribute);
+
+		if (attribute.equals("id"))
+			rename(edgeIndex, edges, edgeId, id, null);
+	}
+
+	void unsupported(String event) {
+		System.err.printf("%s is not supported while bulk loading\n", event);
+	}
+
+	protected long getNode(String nodeId) {
+		Long id = nodes.get(nodeId);
+
+		if (id == null) {
+			id = lookup(nodeIndex, nodeId);
+
+			if (id == null)
+				return -1;
+
+			nodes.put(nodeId, id);
+		}
+
+		return id;
+	}
+
+	protected long getEdge(String edgeId) {
+		Long id = edges.get(edgeId);
+
+		if (id == null) {
+			id = lookup(edgeIndex, edgeId);
+
+			if (id == null)
+				return -1;
+
+			edges.put(edgeId, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Follow a change of the id property of an element. Elements without id
+	 * property are identified by their database id, and are not indexed.
+	 */
+	private static void rename(BatchInserterIndex index,
+			HashMap<String, Long> ids, String oldId, long dbId, Object newId) {
+		ids.remove(oldId);
+
+		if (newId == null) {
+			index.updateOrAdd(dbId, Collections.<String, Object> emptyMap());
+			ids.put(Long.toString(dbId), dbId);
+		} else {
+			index.updateOrAdd(dbId,
+					Collections.<String, Object> singletonMap("id", newId));
+			ids.put(newId.toString(), dbId);
+		}
+	}
+
+	private static Long lookup(BatchInserterIndex index, String id) {
+		IndexHits<Long> hits = index.get("id", id);
+
+		try {
+			return hits.hasNext() ? hits.next() : null;
+		} finally {
+			hits.close();
+		}
+	}
+}
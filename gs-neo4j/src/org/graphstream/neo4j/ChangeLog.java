@@ -0,0 +1,421 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.SourceBase;
+
+/**
+ * An append-only log of the changes committed in a store. The events of each
+ * commit are written as one record, with a sequence number increasing by one
+ * from a record to the next, so a client which knows the last sequence it has
+ * seen can get only the changes it has missed.
+ * 
+ * The log is split in segment files named after the first sequence they
+ * hold. A new segment is started when the current one exceeds the segment
+ * size, and the oldest segments are deleted when there are more than the
+ * maximum number of segments. Each record is followed by a checksum, a record
+ * partially written when the process stopped is dropped when the log is
+ * opened again.
+ */
+class ChangeLog {
+	static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Name of the log directory in the store directory.
+	 */
+	static final String DIRECTORY_NAME = "gs-changelog";
+
+	private static final String EXTENSION = ".log";
+
+	protected final File dir;
+	protected final long segmentSize;
+	protected final int maxSegments;
+
+	/**
+	 * First sequence of each segment, in order.
+	 */
+	protected final ArrayList<Long> segments;
+
+	private RandomAccessFile current;
+	private long lastSequence;
+
+	/**
+	 * Delete the segments of a log and its directory.
+	 */
+	static void delete(File dir) {
+		File[] files = dir.listFiles();
+
+		if (files == null)
+			return;
+
+		for (File f : files)
+			if (f.getName().endsWith(EXTENSION))
+				f.delete();
+
+		dir.delete();
+	}
+
+	/**
+	 * Open a log, creating its directory if needed.
+	 * 
+	 * @param segmentSize
+	 *            size above which a new segment is started
+	 * @param maxSegments
+	 *            number of segments kept, zero to keep all of them
+	 */
+	ChangeLog(File dir, long segmentSize, int maxSegments) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		this.segments = new ArrayList<Long>();
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("can not create " + dir);
+
+		String[] names = dir.list(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				return name.endsWith(EXTENSION);
+			}
+		});
+
+		Arrays.sort(names);
+
+		for (String name : names)
+			segments.add(Long.parseLong(name.substring(0, name.length()
+					- EXTENSION.length())));
+
+		if (segments.isEmpty()) {
+			lastSequence = 0;
+			segments.add(1L);
+		} else
+			lastSequence = recover(segments.get(segments.size() - 1));
+
+		current = new RandomAccessFile(segmentFile(segments
+				.get(segments.size() - 1)), "rw");
+		current.seek(current.length());
+	}
+
+	/**
+	 * Sequence of the last record of the log, zero if the log is empty.
+	 */
+	synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Sequence of the first record still in the log.
+	 */
+	synchronized long getFirstSequence() {
+		return segments.get(0);
+	}
+
+	/**
+	 * Append the events of a commit.
+	 * 
+	 * @return the sequence of the new record
+	 */
+	synchronized long append(List<StoreEvent> events) throws IOException {
+		long sequence = lastSequence + 1;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeLong(sequence);
+		out.writeInt(events.size());
+
+		for (StoreEvent e : events)
+			e.write(out);
+
+		out.flush();
+
+		byte[] record = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(record);
+
+		if (current.length() > 0
+				&& current.length() + record.length + 8 > segmentSize)
+			rotate(sequence);
+
+		ByteArrayOutputStream framed = new ByteArrayOutputStream(
+				record.length + 8);
+		DataOutputStream f = new DataOutputStream(framed);
+
+		f.writeInt(record.length);
+		f.write(record);
+		f.writeInt((int) crc.getValue());
+
+		current.write(framed.toByteArray());
+		lastSequence = sequence;
+
+		return sequence;
+	}
+
+	/**
+	 * Send to a sink the events of all the records following a sequence.
+	 * Records appended while the replay runs are not sent.
+	 * 
+	 * @param since
+	 *            last sequence already known by the sink
+	 * @param projection
+	 *            the keys of the attributes which are sent
+	 * @return the sequence of the last record sent, to be used for the next
+	 *         replay
+	 * @throws IOException
+	 *             if a record can not be read or does not match its checksum
+	 * @throws IllegalArgumentException
+	 *             if some records following the sequence are not in the log
+	 *             anymore, or if the sequence is not known by the log
+	 */
+	long replay(long since, Sink sink, AttributeProjection projection)
+			throws IOException {
+		long first, last;
+		Long[] starts;
+
+		synchronized (this) {
+			first = segments.get(0);
+			last = lastSequence;
+			starts = segments.toArray(new Long[segments.size()]);
+		}
+
+		if (since + 1 < first || since > last)
+			throw new IllegalArgumentException(String.format(
+					"changes since %d are not in the log (%d to %d)", since,
+					first, last));
+
+		ReplaySource source = new ReplaySource(projection);
+		CRC32 crc = new CRC32();
+
+		source.addSink(sink);
+
+		try {
+			for (int i = 0; i < starts.length; i++) {
+				if (i + 1 < starts.length && starts[i + 1] <= since + 1)
+					continue;
+
+				if (starts[i] > last)
+					break;
+
+				DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(
+								segmentFile(starts[i])), 1 << 16));
+
+				try {
+					long sequence = starts[i] - 1;
+
+					while (sequence < last) {
+						int length;
+
+						try {
+							length = in.readInt();
+						} catch (EOFException e) {
+							break;
+						}
+
+						DataInputStream r = new DataInputStream(
+								new ByteArrayInputStream(read(in, length, crc)));
+
+						sequence = r.readLong();
+						int count = r.readInt();
+
+						if (sequence <= since)
+							continue;
+
+						for (int j = 0; j < count; j++)
+							source.send(StoreEvent.read(r));
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			source.removeSink(sink);
+		}
+
+		return last;
+	}
+
+	synchronized void close() throws IOException {
+		current.close();
+	}
+
+	/**
+	 * Start a new segment and delete the oldest ones if needed.
+	 */
+	private void rotate(long sequence) throws IOException {
+		current.close();
+		segments.add(sequence);
+		current = new RandomAccessFile(segmentFile(sequence), "rw");
+
+		while (maxSegments > 0 && segments.size() > maxSegments)
+			segmentFile(segments.remove(0)).delete();
+	}
+
+	/**
+	 * Find the last complete record of a segment, and cut the segment right
+	 * after it.
+	 * 
+	 * @return the sequence of the last complete record
+	 */
+	private long recover(long start) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(segmentFile(start), "rw");
+
+		try {
+			long sequence = start - 1;
+			long end = 0;
+			CRC32 crc = new CRC32();
+
+			while (end + 4 <= raf.length()) {
+				raf.seek(end);
+				int length = raf.readInt();
+
+				if (length < 12 || end + 8 + length > raf.length())
+					break;
+
+				byte[] record = new byte[length];
+				raf.readFully(record);
+
+				crc.reset();
+				crc.update(record);
+
+				if (raf.readInt() != (int) crc.getValue())
+					break;
+
+				sequence = new DataInputStream(new ByteArrayInputStream(record))
+						.readLong();
+				end += 8 + length;
+			}
+
+			raf.setLength(end);
+
+			return sequence;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Read a record and its checksum.
+	 * 
+	 * @throws IOException
+	 *             if the record does not match its checksum
+	 */
+	static byte[] read(DataInputStream in, int length, CRC32 crc)
+			throws IOException {
+		if (length < 12)
+			throw new IOException("invalid record length " + length);
+
+		byte[] record = new byte[length];
+		in.readFully(record);
+
+		crc.reset();
+		crc.update(record);
+
+		if (in.readInt() != (int) crc.getValue())
+			throw new IOException("record does not match its checksum");
+
+		return record;
+	}
+
+	/**
+	 * The source sending the replayed events. Each replay has its own source
+	 * id, so that sinks synchronizing sources do not drop its events. It can
+	 * also send the elements of a snapshot or of a flush, each element being
+	 * followed by its attributes.
+	 * 
+	 * The log holds all the attributes, the replayed ones are those whose key
+	 * passes the projection. Its filter is not applied, the elements of past
+	 * events can not be read anymore.
+	 */
+	static class ReplaySource extends SourceBase implements Snapshot.Receiver {
+		protected final AttributeProjection projection;
+
+		ReplaySource() {
+			this(AttributeProjection.ALL);
+		}
+
+		ReplaySource(AttributeProjection projection) {
+			this.projection = projection;
+		}
+
+		void send(StoreEvent e) {
+			if (e.getAttribute() != null
+					&& !projection.acceptKey(e.getAttribute()))
+				return;
+
+			e.sendTo(this, sourceId);
+		}
+
+		public void node(String nodeId, String[] keys, Object[] values) {
+			sendNodeAdded(sourceId, nodeId);
+
+			for (int i = 0; i < keys.length; i++)
+				sendNodeAttributeAdded(sourceId, nodeId, keys[i], values[i]);
+		}
+
+		public void edge(String edgeId, String src, String trg, String[] keys,
+				Object[] values) {
+			sendEdgeAdded(sourceId, edgeId, src, trg, false);
+
+			for (int i = 0; i < keys.length; i++)
+				sendEdgeAttributeAdded(sourceId, edgeId, keys[i], values[i]);
+		}
+	}
+
+	static void skip(DataInputStream in, int n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes(n);
+
+			if (skipped <= 0)
+				throw new EOFException();
+
+			n -= skipped;
+		}
+	}
+
+	private File segmentFile(long start) {
+		return new File(dir, String.format("%020d%s", start, EXTENSION));
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Send the events produced by the commits of the store from a dedicated
+ * thread, so that slow sinks do not slow the writes down.
+ * 
+ * Events are copied in a bounded queue. When the queue is full, the
+ * committing thread waits for some room if the policy is
+ * {@link OverflowPolicy#BLOCK}. With {@link OverflowPolicy#COALESCE}, an
+ * update of an attribute whose previous update is still in the queue is merged
+ * with it, the intermediate value being lost. Other events always wait.
+ */
+public class EventDispatcher {
+	public static enum OverflowPolicy {
+		BLOCK, COALESCE
+	}
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	protected final Neo4JProxy proxy;
+	protected final int capacity;
+	protected final OverflowPolicy policy;
+
+	protected final LinkedList<Entry> queue;
+	protected final ReentrantLock lock;
+	protected final Condition notEmpty, notFull, empty;
+
+	/**
+	 * Attribute updates still in the queue, indexed by element and then by
+	 * attribute. Only used with the coalesce policy.
+	 */
+	protected final HashMap<String, HashMap<String, Entry>> updates;
+
+	protected final Thread thread;
+	protected boolean running;
+	protected boolean sending;
+	protected long delivered;
+	protected long coalesced;
+
+	EventDispatcher(Neo4JProxy proxy, int capacity, OverflowPolicy policy) {
+		this.proxy = proxy;
+		this.capacity = Math.max(1, capacity);
+		this.policy = policy;
+		this.queue = new LinkedList<Entry>();
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+		this.notFull = lock.newCondition();
+		this.empty = lock.newCondition();
+		this.updates = new HashMap<String, HashMap<String, Entry>>();
+		this.running = true;
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "neo4j-dispatch");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Number of events waiting to be sent.
+	 */
+	public int getQueueSize() {
+		lock.lock();
+
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Time, in milliseconds, the oldest event of the queue has been waiting.
+	 */
+	public long getLag() {
+		lock.lock();
+
+		try {
+			if (queue.size() == 0)
+				return 0;
+
+			return (System.nanoTime() - queue.getFirst().date) / 1000000;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Number of events sent since the dispatcher has been started.
+	 */
+	public long getDeliveredCount() {
+		lock.lock();
+
+		try {
+			return delivered;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Number of attribute updates merged with a previous one.
+	 */
+	public long getCoalescedCount() {
+		lock.lock();
+
+		try {
+			return coalesced;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add the events of a commit to the queue.
+	 */
+	void enqueue(List<StoreEvent> events) throws InterruptedException {
+		lock.lock();
+
+		try {
+			for (StoreEvent e : events)
+				enqueue(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void enqueue(StoreEvent e) throws InterruptedException {
+		if (queue.size() >= capacity && policy == OverflowPolicy.COALESCE
+				&& e.isAttributeUpdate()) {
+			HashMap<String, Entry> pending = updates.get(elementKey(e));
+			Entry previous = pending == null ? null : pending
+					.get(e.attribute);
+
+			if (previous != null) {
+				previous.event.value = e.value;
+				coalesced++;
+				return;
+			}
+		}
+
+		while (queue.size() >= capacity)
+			notFull.await();
+
+		Entry entry = new Entry(e);
+		queue.add(entry);
+
+		if (policy == OverflowPolicy.COALESCE)
+			track(entry);
+
+		notEmpty.signal();
+	}
+
+	/**
+	 * Keep the index of pending attribute updates up to date with a new
+	 * event. An update can not be merged across a removal of its attribute
+	 * or of its element.
+	 */
+	private void track(Entry entry) {
+		StoreEvent e = entry.event;
+
+		switch (e.type) {
+		case NODE_ATTRIBUTE_ADDED:
+		case NODE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_CHANGED: {
+			String key = elementKey(e);
+			HashMap<String, Entry> pending = updates.get(key);
+
+			if (pending == null) {
+				pending = new HashMap<String, Entry>();
+				updates.put(key, pending);
+			}
+
+			pending.put(e.attribute, entry);
+			break;
+		}
+		case NODE_ATTRIBUTE_REMOVED:
+		case EDGE_ATTRIBUTE_REMOVED: {
+			HashMap<String, Entry> pending = updates.get(elementKey(e));
+
+			if (pending != null)
+				pending.remove(e.attribute);
+
+			break;
+		}
+		case NODE_REMOVED:
+		case EDGE_REMOVED:
+			updates.remove(elementKey(e));
+			break;
+		case GRAPH_CLEARED:
+			updates.clear();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void untrack(Entry entry) {
+		StoreEvent e = entry.event;
+
+		if (!e.isAttributeUpdate())
+			return;
+
+		String key = elementKey(e);
+		HashMap<String, Entry> pending = updates.get(key);
+
+		if (pending != null && pending.get(e.attribute) == entry) {
+			pending.remove(e.attribute);
+
+			if (pending.size() == 0)
+				updates.remove(key);
+		}
+	}
+
+	private static String elementKey(StoreEvent e) {
+		return (e.isEdgeEvent() ? "e:" : "n:") + e.elementId;
+	}
+
+	/**
+	 * Main loop of the dispatching thread.
+	 */
+	protected void dispatch() {
+		while (true) {
+			Entry entry;
+
+			lock.lock();
+
+			try {
+				while (running && queue.size() == 0)
+					notEmpty.await();
+
+				if (queue.size() == 0) {
+					empty.signalAll();
+					return;
+				}
+
+				entry = queue.removeFirst();
+				untrack(entry);
+				sending = true;
+				notFull.signal();
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			try {
+				proxy.send(entry.event);
+			} catch (RuntimeException e) {
+				proxy.metrics.dispatchFailed();
+				e.printStackTrace();
+			}
+
+			lock.lock();
+
+			try {
+				sending = false;
+				delivered++;
+
+				if (queue.size() == 0)
+					empty.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Wait until all the events of the queue have been sent.
+	 */
+	public void drain() throws InterruptedException {
+		lock.lock();
+
+		try {
+			while (queue.size() > 0 || sending)
+				empty.await();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Send the remaining events and stop the dispatching thread.
+	 */
+	void shutdown() throws InterruptedException {
+		lock.lock();
+
+		try {
+			running = false;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		thread.join();
+	}
+
+	protected static class Entry {
+		final StoreEvent event;
+		final long date;
+
+		Entry(StoreEvent event) {
+			this.event = event;
+			this.date = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.Serializable;
+
+/**
+ * Position of a flush of the database content. The cursor is moved forward
+ * each time an element of the store has been sent to the sinks. If a flush is
+ * interrupted or fails, it can be resumed after the last element sent by
+ * passing the same cursor to {@link Neo4JProxy#flushDB(FlushCursor)}.
+ * 
+ * The cursor is serializable so it can be persisted between two runs.
+ */
+public class FlushCursor implements Serializable {
+	private static final long serialVersionUID = 4370622659493826115L;
+
+	public static enum Phase {
+		NODES, EDGES, DONE
+	}
+
+	protected volatile Phase phase;
+	protected volatile long next;
+
+	/**
+	 * Create a cursor pointing to the beginning of the store.
+	 */
+	public FlushCursor() {
+		this.phase = Phase.NODES;
+		this.next = 0;
+	}
+
+	/**
+	 * Store being read, nodes first and then relationships.
+	 */
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * First id of the next element to send, in the store of the current
+	 * phase.
+	 */
+	public long getNext() {
+		return next;
+	}
+
+	public boolean isDone() {
+		return phase == Phase.DONE;
+	}
+
+	void moveTo(long next) {
+		this.next = next;
+	}
+
+	void nextPhase() {
+		phase = phase == Phase.NODES ? Phase.EDGES : Phase.DONE;
+		next = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s@%d", phase, next);
+	}
+}
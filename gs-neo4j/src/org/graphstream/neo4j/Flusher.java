@@ -0,0 +1,248 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.GraphDatabaseAPI;
+
+/**
+ * Replay the content of a store as GraphStream events, reading it with
+ * several threads.
+ * 
+ * The node and relationship stores are split in pages of consecutive ids.
+ * Pages are read by a pool of workers, each one in its own short read
+ * transaction, but their content is sent by the thread calling
+ * {@link #flush(FlushCursor)}, in the order of the pages. All the nodes are
+ * sent before the first edge, and the attributes of an element are sent
+ * right after the element itself. At most two pages per worker are held in
+ * memory at the same time, whatever the size of the store.
+ * 
+ * The cursor is moved after each element sent, so a flush which fails can be
+ * resumed from the first element which has not been sent.
+ */
+class Flusher {
+	protected final Neo4JProxy proxy;
+	protected final Snapshot.Receiver receiver;
+	protected final GraphDatabaseService graphDb;
+	protected final AttributeProjection projection;
+	protected final int threads;
+	protected final int pageSize;
+
+	/**
+	 * Create a flusher sending the content of the store to the sinks of the
+	 * proxy.
+	 */
+	Flusher(final Neo4JProxy proxy, int threads, int pageSize) {
+		this(proxy, new Snapshot.Receiver() {
+			public void node(String nodeId, String[] keys, Object[] values) {
+				proxy.flushNode(nodeId, keys, values);
+			}
+
+			public void edge(String edgeId, String src, String trg,
+					String[] keys, Object[] values) {
+				proxy.flushEdge(edgeId, src, trg, keys, values);
+			}
+		}, threads, pageSize);
+	}
+
+	/**
+	 * Create a flusher sending the content of the store to a receiver.
+	 */
+	Flusher(Neo4JProxy proxy, Snapshot.Receiver receiver, int threads,
+			int pageSize) {
+		this.proxy = proxy;
+		this.receiver = receiver;
+		this.graphDb = proxy.graphDb;
+		this.projection = proxy.projection;
+		this.threads = Math.max(1, threads);
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Read the store from the position of a cursor and send its content to
+	 * the receiver.
+	 */
+	void flush(FlushCursor cursor) throws ExecutionException,
+			InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					int count = 0;
+
+					public synchronized Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "neo4j-flush-" + count++);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+
+		try {
+			while (!cursor.isDone()) {
+				flush(pool, cursor);
+				cursor.nextPhase();
+			}
+		} finally {
+			//
+			// Workers must not be interrupted, an interrupted thread closes
+			// the file channels of the store.
+			//
+			pool.shutdown();
+		}
+	}
+
+	private void flush(ExecutorService pool, FlushCursor cursor)
+			throws ExecutionException, InterruptedException {
+		GraphDatabaseAPI api = (GraphDatabaseAPI) graphDb;
+		boolean edges = cursor.getPhase() == FlushCursor.Phase.EDGES;
+		long highest = api.getNodeManager().getHighestPossibleIdInUse(
+				edges ? Relationship.class : Node.class);
+		LinkedList<Future<Page>> window = new LinkedList<Future<Page>>();
+		long next = cursor.getNext();
+
+		try {
+			while (next <= highest || window.size() > 0) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+
+				while (next <= highest && window.size() < 2 * threads) {
+					window.add(pool.submit(new Page(edges, next, Math.min(next
+							+ pageSize, highest + 1))));
+					next += pageSize;
+				}
+
+				Page page = window.poll().get();
+				page.send(cursor);
+				cursor.moveTo(page.to);
+			}
+		} finally {
+			for (Future<Page> f : window)
+				f.cancel(false);
+		}
+	}
+
+	/**
+	 * A range of ids of the node or of the relationship store. The page is
+	 * read by a worker and then sent by the flushing thread.
+	 */
+	protected class Page implements Callable<Page> {
+		final boolean edges;
+		final long from, to;
+		final ArrayList<Element> elements;
+
+		Page(boolean edges, long from, long to) {
+			this.edges = edges;
+			this.from = from;
+			this.to = to;
+			this.elements = new ArrayList<Element>();
+		}
+
+		public Page call() {
+			Transaction tx = graphDb.beginTx();
+
+			try {
+				read();
+				tx.success();
+			} finally {
+				tx.finish();
+			}
+
+			return this;
+		}
+
+		private void read() {
+			for (long id = from; id < to; id++) {
+				try {
+					if (edges) {
+						Relationship r = graphDb.getRelationshipById(id);
+						Element e = read(id, proxy.getEdgeId(r), r);
+						e.source = proxy.getNodeId(r.getStartNode());
+						e.target = proxy.getNodeId(r.getEndNode());
+						elements.add(e);
+					} else {
+						Node n = graphDb.getNodeById(id);
+						elements.add(read(id, proxy.getNodeId(n), n));
+					}
+				} catch (NotFoundException e) {
+					// No element with this id
+				}
+			}
+		}
+
+		/**
+		 * Send the elements of the page, moving the cursor after each one. A
+		 * sink failure is thrown once the other sinks have received the
+		 * element, so the cursor is moved past it in any case.
+		 */
+		void send(FlushCursor cursor) {
+			for (Element e : elements) {
+				try {
+					if (edges)
+						receiver.edge(e.id, e.source, e.target, e.keys,
+								e.values);
+					else
+						receiver.node(e.id, e.keys, e.values);
+				} finally {
+					cursor.moveTo(e.dbId + 1);
+				}
+			}
+		}
+
+		private Element read(long dbId, String id, PropertyContainer pc) {
+			Element e = new Element();
+			e.dbId = dbId;
+			e.id = id;
+			e.keys = projection.keys(pc);
+			e.values = projection.values(pc, e.keys);
+
+			return e;
+		}
+	}
+
+	protected static class Element {
+		long dbId;
+		String id;
+		String source, target;
+		String[] keys;
+		Object[] values;
+	}
+}
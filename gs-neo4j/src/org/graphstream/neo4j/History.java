@@ -0,0 +1,783 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.SinkAdapter;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+/**
+ * The versioned history of a store. The events of each commit are appended
+ * to a log as one record, stamped with the step of the last stepBegins event
+ * committed before or with them, so that the log keeps every state the graph
+ * has been through while the store only holds the last one.
+ * 
+ * Two indexes turn the reads of the history into range reads:
+ * <ul>
+ * <li>the step index holds the position of the first record of each step,
+ * the events between two steps are read from the first record of the first
+ * step up to the last record of the second one;</li>
+ * <li>the keyframes are snapshots of the graph taken every few steps, with
+ * the position of the log they match, the state of the graph at a step is
+ * the last keyframe before this step followed by the records up to it.</li>
+ * </ul>
+ * A keyframe is built in a background thread from the previous keyframe and
+ * the records following it, the store itself is never read, so commits go
+ * on while it is built.
+ * Records committed before the first step are stamped with
+ * {@link Double#NEGATIVE_INFINITY}. Steps are expected to increase: a step
+ * which is not greater than the current one does not start a new step, and
+ * its events are stamped with the current step.
+ */
+class History {
+	/**
+	 * Name of the history directory in the store directory.
+	 */
+	static final String DIRECTORY_NAME = "gs-history";
+
+	private static final String LOG_FILE = "events.log";
+	private static final String STEP_INDEX = "steps.idx";
+	private static final String KEYFRAME_INDEX = "keyframes.idx";
+	private static final String KEYFRAME_PREFIX = "keyframe-";
+
+	/**
+	 * Size of an entry of the step and keyframe indexes: a step and a
+	 * position in the log.
+	 */
+	private static final int ENTRY_SIZE = 16;
+
+	protected final File dir;
+	protected final Neo4JProxy proxy;
+
+	/**
+	 * Number of steps between two keyframes, zero to take no keyframe.
+	 */
+	protected final int keyframeInterval;
+
+	private final RandomAccessFile log;
+	private final RandomAccessFile stepIndex;
+	private final RandomAccessFile keyframeIndex;
+
+	private final Index steps = new Index();
+	private final Index keyframes = new Index();
+
+	private double currentStep = Double.NEGATIVE_INFINITY;
+	private int stepsSinceKeyframe;
+
+	/**
+	 * Thread building a keyframe, null if none is being built.
+	 */
+	private Thread keyframer;
+	private boolean closed = false;
+
+	/**
+	 * Delete the files of a history and its directory.
+	 */
+	static void delete(File dir) {
+		File[] files = dir.listFiles();
+
+		if (files == null)
+			return;
+
+		for (File f : files)
+			if (f.getName().equals(LOG_FILE) || f.getName().endsWith(".idx")
+					|| f.getName().startsWith(KEYFRAME_PREFIX))
+				f.delete();
+
+		dir.delete();
+	}
+
+	/**
+	 * Open a history, creating its directory if needed.
+	 * 
+	 * @param proxy
+	 *            the proxy whose metrics count the keyframes which can not
+	 *            be written
+	 * @param keyframeInterval
+	 *            number of steps between two keyframes, zero to take no
+	 *            keyframe
+	 */
+	History(File dir, Neo4JProxy proxy, int keyframeInterval)
+			throws IOException {
+		this.dir = dir;
+		this.proxy = proxy;
+		this.keyframeInterval = keyframeInterval;
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("can not create " + dir);
+
+		log = new RandomAccessFile(new File(dir, LOG_FILE), "rw");
+		stepIndex = new RandomAccessFile(new File(dir, STEP_INDEX), "rw");
+		keyframeIndex = new RandomAccessFile(new File(dir, KEYFRAME_INDEX),
+				"rw");
+
+		load(stepIndex, steps);
+		load(keyframeIndex, keyframes);
+		recover();
+	}
+
+	/**
+	 * Take the first keyframe from the store if the history is new, so that
+	 * the states it rebuilds include the elements created before it. This is
+	 * the only time the store is read, before any commit is logged.
+	 */
+	synchronized void start(GraphDatabaseService graphDb) throws IOException {
+		if (log.length() > 0 || keyframes.size > 0
+				|| !GlobalGraphOperations.at(graphDb).getAllNodes().iterator()
+						.hasNext())
+			return;
+
+		Snapshot.write(keyframeFile(0), proxy.getLastTxId(), graphDb, proxy);
+		addEntry(keyframeIndex, keyframes, Double.NEGATIVE_INFINITY, 0);
+	}
+
+	/**
+	 * Current step of the history, {@link Double#NEGATIVE_INFINITY} if no
+	 * step has been recorded.
+	 */
+	synchronized double getStep() {
+		return currentStep;
+	}
+
+	/**
+	 * Append the events of a commit. If the commit starts the step following
+	 * the last keyframe by the keyframe interval, a new keyframe is built,
+	 * unless the previous one is still being built.
+	 */
+	synchronized void append(List<StoreEvent> events) throws IOException {
+		double step = currentStep;
+
+		for (StoreEvent e : events)
+			if (e.getType() == StoreEvent.Type.STEP_BEGINS
+					&& e.getStep() > step)
+				step = e.getStep();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeDouble(step);
+		out.writeInt(events.size());
+
+		for (StoreEvent e : events)
+			e.write(out);
+
+		out.flush();
+
+		byte[] record = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(record);
+
+		ByteArrayOutputStream framed = new ByteArrayOutputStream(
+				record.length + 8);
+		DataOutputStream f = new DataOutputStream(framed);
+
+		f.writeInt(record.length);
+		f.write(record);
+		f.writeInt((int) crc.getValue());
+
+		long offset = log.length();
+
+		log.seek(offset);
+		log.write(framed.toByteArray());
+
+		if (step <= currentStep)
+			return;
+
+		addEntry(stepIndex, steps, step, offset);
+		currentStep = step;
+		stepsSinceKeyframe++;
+
+		if (keyframeInterval > 0 && stepsSinceKeyframe >= keyframeInterval
+				&& keyframer == null)
+			startKeyframe(step, log.length());
+	}
+
+	/**
+	 * Start building a keyframe matching a position of the log.
+	 */
+	private void startKeyframe(final double step, final long end) {
+		int last = keyframes.size - 1;
+		final File base = last >= 0 ? keyframeFile(last) : null;
+		final long start = last >= 0 ? keyframes.offsets[last] : 0;
+
+		stepsSinceKeyframe = 0;
+		keyframer = new Thread(new Runnable() {
+			public void run() {
+				buildKeyframe(base, start, end, step);
+			}
+		}, "neo4j-history-keyframe");
+		keyframer.setDaemon(true);
+		keyframer.start();
+	}
+
+	/**
+	 * Build a keyframe from the previous one and the records following it up
+	 * to a position of the log. If the keyframe can not be written the
+	 * history stays valid, the state at the following steps is just read
+	 * from an older keyframe.
+	 * 
+	 * @param base
+	 *            the previous keyframe, or null to start from an empty graph
+	 * @param start
+	 *            position of the log matching the previous keyframe
+	 */
+	private void buildKeyframe(File base, long start, long end, double step) {
+		try {
+			State state = new State();
+			ChangeLog.ReplaySource source = new ChangeLog.ReplaySource();
+
+			source.addSink(state);
+
+			if (base != null)
+				Snapshot.replay(base, source, AttributeProjection.ALL);
+
+			read(source, start, end, Double.NEGATIVE_INFINITY,
+					Double.POSITIVE_INFINITY, false);
+
+			File file;
+
+			synchronized (this) {
+				if (closed)
+					return;
+
+				file = keyframeFile(keyframes.size);
+			}
+
+			//
+			// Keyframes are not checked against the store, they have no
+			// transaction id.
+			//
+			Snapshot.Writer writer = new Snapshot.Writer(file);
+
+			try {
+				state.sendTo(writer);
+				writer.finish(0);
+			} finally {
+				writer.abort();
+			}
+
+			synchronized (this) {
+				addEntry(keyframeIndex, keyframes, step, end);
+			}
+		} catch (IOException e) {
+			proxy.metrics.storageFailed();
+			e.printStackTrace();
+		} finally {
+			synchronized (this) {
+				keyframer = null;
+			}
+		}
+	}
+
+	/**
+	 * Send to a sink the events stamped with a step between two bounds.
+	 * 
+	 * @param from
+	 *            first step, included
+	 * @param to
+	 *            last step, included
+	 * @param projection
+	 *            the keys of the attributes which are sent
+	 * @return the number of events sent
+	 */
+	long replayEvents(double from, double to, Sink sink,
+			AttributeProjection projection) throws IOException {
+		long start, end;
+
+		synchronized (this) {
+			int i = steps.ceiling(from);
+
+			if (from == Double.NEGATIVE_INFINITY)
+				start = 0;
+			else if (i < steps.size)
+				start = steps.offsets[i];
+			else
+				return 0;
+
+			end = log.length();
+		}
+
+		ChangeLog.ReplaySource source = new ChangeLog.ReplaySource(
+				projection);
+		source.addSink(sink);
+
+		try {
+			return read(source, start, end, from, to, false);
+		} finally {
+			source.removeSink(sink);
+		}
+	}
+
+	/**
+	 * Send to a sink the events describing the graph after the events
+	 * stamped with a step lower than or equal to a given step. The last
+	 * keyframe before the step is sent first, element by element, then the
+	 * events following it. Step events are not sent.
+	 * 
+	 * @param projection
+	 *            the keys of the attributes which are sent
+	 * @return the number of events read from the log
+	 */
+	long replayState(double step, Sink sink, AttributeProjection projection)
+			throws IOException {
+		long start, end;
+		File file = null;
+
+		synchronized (this) {
+			int i = keyframes.floor(step);
+
+			if (i >= 0) {
+				file = keyframeFile(i);
+				start = keyframes.offsets[i];
+			} else
+				start = 0;
+
+			end = log.length();
+		}
+
+		ChangeLog.ReplaySource source = new ChangeLog.ReplaySource(
+				projection);
+		source.addSink(sink);
+
+		try {
+			if (file != null)
+				Snapshot.replay(file, source, projection);
+
+			return read(source, start, end, Double.NEGATIVE_INFINITY, step,
+					true);
+		} finally {
+			source.removeSink(sink);
+		}
+	}
+
+	/**
+	 * Close the history, once the keyframe being built, if any, is written.
+	 */
+	void close() throws IOException {
+		Thread t;
+
+		synchronized (this) {
+			closed = true;
+			t = keyframer;
+		}
+
+		if (t != null) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (this) {
+			log.close();
+			stepIndex.close();
+			keyframeIndex.close();
+		}
+	}
+
+	/**
+	 * Send the events of the records between two positions of the log whose
+	 * step is in a range. Records are ordered by step, the read stops at the
+	 * first record after the range.
+	 */
+	private long read(ChangeLog.ReplaySource source, long start, long end,
+			double from, double to, boolean skipSteps) throws IOException {
+		FileInputStream file = new FileInputStream(new File(dir, LOG_FILE));
+		long count = 0;
+
+		try {
+			file.getChannel().position(start);
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					file, 1 << 16));
+			CRC32 crc = new CRC32();
+			long offset = start;
+
+			while (offset < end) {
+				int length = in.readInt();
+				DataInputStream r = new DataInputStream(
+						new ByteArrayInputStream(ChangeLog.read(in, length, crc)));
+				double step = r.readDouble();
+				int events = r.readInt();
+
+				if (step > to)
+					break;
+
+				if (step >= from) {
+					for (int i = 0; i < events; i++) {
+						StoreEvent e = StoreEvent.read(r);
+
+						if (skipSteps
+								&& e.getType() == StoreEvent.Type.STEP_BEGINS)
+							continue;
+
+						source.send(e);
+						count++;
+					}
+				}
+
+				offset += 8 + length;
+			}
+		} finally {
+			file.close();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Find the end of the last complete record of the log, cut the log right
+	 * after it and bring the indexes up to date. Only the records following
+	 * the last indexed step are checked.
+	 */
+	private void recover() throws IOException {
+		long length = log.length();
+
+		while (steps.size > 0 && steps.offsets[steps.size - 1] >= length)
+			steps.size--;
+
+		long end = steps.size > 0 ? steps.offsets[steps.size - 1] : 0;
+		double step = steps.size > 0 ? steps.steps[steps.size - 1]
+				: Double.NEGATIVE_INFINITY;
+		CRC32 crc = new CRC32();
+
+		while (end + 4 <= length) {
+			log.seek(end);
+			int size = log.readInt();
+
+			if (size < 12 || end + 8 + size > length)
+				break;
+
+			byte[] record = new byte[size];
+			log.readFully(record);
+
+			crc.reset();
+			crc.update(record);
+
+			if (log.readInt() != (int) crc.getValue())
+				break;
+
+			double s = new DataInputStream(new ByteArrayInputStream(record))
+					.readDouble();
+
+			if (s > step) {
+				steps.add(s, end);
+				step = s;
+			}
+
+			end += 8 + size;
+		}
+
+		log.setLength(end);
+
+		//
+		// The record of the last indexed step may itself be incomplete.
+		//
+		while (steps.size > 0 && steps.offsets[steps.size - 1] >= end)
+			steps.size--;
+
+		currentStep = steps.size > 0 ? steps.steps[steps.size - 1]
+				: Double.NEGATIVE_INFINITY;
+		save(stepIndex, steps);
+
+		while (keyframes.size > 0
+				&& (keyframes.offsets[keyframes.size - 1] > end || !keyframeFile(
+						keyframes.size - 1).isFile()))
+			keyframes.size--;
+
+		save(keyframeIndex, keyframes);
+
+		double last = keyframes.size > 0 ? keyframes.steps[keyframes.size - 1]
+				: Double.NEGATIVE_INFINITY;
+
+		stepsSinceKeyframe = steps.size - steps.floor(last) - 1;
+	}
+
+	private static void load(RandomAccessFile raf, Index index)
+			throws IOException {
+		long count = raf.length() / ENTRY_SIZE;
+
+		raf.seek(0);
+
+		for (long i = 0; i < count; i++)
+			index.add(raf.readDouble(), raf.readLong());
+	}
+
+	/**
+	 * Write the entries of an index which are not in its file yet, and cut
+	 * the file after the last entry.
+	 */
+	private static void save(RandomAccessFile raf, Index index)
+			throws IOException {
+		long saved = Math.min(raf.length() / ENTRY_SIZE, index.size);
+
+		raf.seek(saved * ENTRY_SIZE);
+
+		for (int i = (int) saved; i < index.size; i++) {
+			raf.writeDouble(index.steps[i]);
+			raf.writeLong(index.offsets[i]);
+		}
+
+		raf.setLength((long) index.size * ENTRY_SIZE);
+	}
+
+	private static void addEntry(RandomAccessFile raf, Index index,
+			double step, long offset) throws IOException {
+		index.add(step, offset);
+		save(raf, index);
+	}
+
+	private File keyframeFile(int i) {
+		return new File(dir, String.format("%s%010d.bin", KEYFRAME_PREFIX, i));
+	}
+
+	/**
+	 * The graph at a position of the log, built from the elements of a
+	 * keyframe and the events of the following records.
+	 */
+	private static class State extends SinkAdapter {
+		final LinkedHashMap<String, LinkedHashMap<String, Object>> nodes = new LinkedHashMap<String, LinkedHashMap<String, Object>>();
+		final LinkedHashMap<String, Edge> edges = new LinkedHashMap<String, Edge>();
+
+		/**
+		 * Edges of each node, which are removed with it.
+		 */
+		final HashMap<String, HashSet<String>> incident = new HashMap<String, HashSet<String>>();
+
+		public void nodeAdded(String sourceId, long timeId, String nodeId) {
+			if (!nodes.containsKey(nodeId))
+				nodes.put(nodeId, new LinkedHashMap<String, Object>());
+		}
+
+		public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+			nodes.remove(nodeId);
+
+			HashSet<String> ids = incident.remove(nodeId);
+
+			if (ids != null)
+				for (String edgeId : ids.toArray(new String[ids.size()]))
+					edgeRemoved(sourceId, timeId, edgeId);
+		}
+
+		public void edgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			edgeRemoved(sourceId, timeId, edgeId);
+			edges.put(edgeId, new Edge(fromNodeId, toNodeId));
+			incident(fromNodeId).add(edgeId);
+			incident(toNodeId).add(edgeId);
+		}
+
+		public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+			Edge e = edges.remove(edgeId);
+
+			if (e != null) {
+				drop(e.source, edgeId);
+				drop(e.target, edgeId);
+			}
+		}
+
+		public void graphCleared(String sourceId, long timeId) {
+			nodes.clear();
+			edges.clear();
+			incident.clear();
+		}
+
+		public void nodeAttributeAdded(String sourceId, long timeId,
+				String nodeId, String attribute, Object value) {
+			LinkedHashMap<String, Object> a = nodes.get(nodeId);
+
+			if (a != null)
+				a.put(attribute, value);
+		}
+
+		public void nodeAttributeChanged(String sourceId, long timeId,
+				String nodeId, String attribute, Object oldValue,
+				Object newValue) {
+			nodeAttributeAdded(sourceId, timeId, nodeId, attribute, newValue);
+		}
+
+		public void nodeAttributeRemoved(String sourceId, long timeId,
+				String nodeId, String attribute) {
+			LinkedHashMap<String, Object> a = nodes.get(nodeId);
+
+			if (a != null)
+				a.remove(attribute);
+		}
+
+		public void edgeAttributeAdded(String sourceId, long timeId,
+				String edgeId, String attribute, Object value) {
+			Edge e = edges.get(edgeId);
+
+			if (e != null)
+				e.attributes.put(attribute, value);
+		}
+
+		public void edgeAttributeChanged(String sourceId, long timeId,
+				String edgeId, String attribute, Object oldValue,
+				Object newValue) {
+			edgeAttributeAdded(sourceId, timeId, edgeId, attribute, newValue);
+		}
+
+		public void edgeAttributeRemoved(String sourceId, long timeId,
+				String edgeId, String attribute) {
+			Edge e = edges.get(edgeId);
+
+			if (e != null)
+				e.attributes.remove(attribute);
+		}
+
+		/**
+		 * Send the elements, nodes first.
+		 */
+		void sendTo(Snapshot.Receiver receiver) {
+			for (String nodeId : nodes.keySet()) {
+				LinkedHashMap<String, Object> a = nodes.get(nodeId);
+
+				receiver.node(nodeId, a.keySet().toArray(new String[a.size()]),
+						a.values().toArray());
+			}
+
+			for (String edgeId : edges.keySet()) {
+				Edge e = edges.get(edgeId);
+
+				receiver.edge(edgeId, e.source, e.target, e.attributes.keySet()
+						.toArray(new String[e.attributes.size()]), e.attributes
+						.values().toArray());
+			}
+		}
+
+		private HashSet<String> incident(String nodeId) {
+			HashSet<String> ids = incident.get(nodeId);
+
+			if (ids == null) {
+				ids = new HashSet<String>();
+				incident.put(nodeId, ids);
+			}
+
+			return ids;
+		}
+
+		private void drop(String nodeId, String edgeId) {
+			HashSet<String> ids = incident.get(nodeId);
+
+			if (ids != null)
+				ids.remove(edgeId);
+		}
+
+		private static class Edge {
+			final String source, target;
+			final LinkedHashMap<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+			Edge(String source, String target) {
+				this.source = source;
+				this.target = target;
+			}
+		}
+	}
+
+	/**
+	 * Steps in increasing order, with a position of the log.
+	 */
+	private static class Index {
+		double[] steps = new double[64];
+		long[] offsets = new long[64];
+		int size;
+
+		void add(double step, long offset) {
+			if (size == steps.length) {
+				double[] s = new double[size * 2];
+				long[] o = new long[size * 2];
+
+				System.arraycopy(steps, 0, s, 0, size);
+				System.arraycopy(offsets, 0, o, 0, size);
+				steps = s;
+				offsets = o;
+			}
+
+			steps[size] = step;
+			offsets[size++] = offset;
+		}
+
+		/**
+		 * Index of the first entry whose step is greater than or equal to a
+		 * step, or the size of the index if there is none.
+		 */
+		int ceiling(double step) {
+			int low = 0, high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (steps[mid] < step)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return low;
+		}
+
+		/**
+		 * Index of the last entry whose step is lower than or equal to a
+		 * step, or -1 if there is none.
+		 */
+		int floor(double step) {
+			int low = 0, high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (steps[mid] <= step)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return low - 1;
+		}
+	}
+}
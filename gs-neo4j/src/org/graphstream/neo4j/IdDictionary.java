@@ -0,0 +1,521 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A persistent dictionary between the database ids of the nodes, or of the
+ * relationships, of a store and their GraphStream ids. It is kept in the store
+ * directory, in three memory-mapped files:
+ * <ul>
+ * <li>{@code gs-<name>.dat} holds a header and the ids, appended as records
+ * made of the database id and the UTF-8 bytes of the GraphStream id;</li>
+ * <li>{@code gs-<name>.fwd} is an array, indexed by database id, of the
+ * offsets of the records;</li>
+ * <li>{@code gs-<name>.hsh} is an open-addressing hash table, keyed by the
+ * GraphStream ids, of the database ids.</li>
+ * </ul>
+ * 
+ * Opening a dictionary only maps the files, nothing is parsed. The header
+ * records the id of the last transaction of the store the dictionary is up
+ * to date with, and whether the dictionary has been closed cleanly. A
+ * dictionary which is not valid for the store has to be rebuilt with
+ * {@link #reset()} followed by {@link #put(long, String)} for each element.
+ * 
+ * Records of removed or changed ids are not reclaimed, the space they use is
+ * counted and recovered when the dictionary is rebuilt.
+ */
+class IdDictionary {
+	static final int MAGIC = 0x47534944;
+	static final int VERSION = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int HEADER_SIZE = 64;
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int TX_OFFSET = 8;
+	private static final int CLEAN_OFFSET = 16;
+	private static final int SIZE_OFFSET = 20;
+	private static final int END_OFFSET = 24;
+	private static final int GARBAGE_OFFSET = 32;
+
+	private static final int SLOT_SIZE = 16;
+	private static final int MIN_SLOTS = 1024;
+	private static final int MIN_FORWARD = 1024;
+	private static final int MIN_DATA = 64 * 1024;
+
+	/**
+	 * Delete the files of a dictionary, if they exist.
+	 */
+	static void delete(File dir, String name) {
+		for (String ext : new String[] { "dat", "fwd", "hsh" })
+			new File(dir, "gs-" + name + "." + ext).delete();
+	}
+
+	private final Segment data;
+	private final Segment forward;
+	private final Segment slots;
+
+	private final ReentrantReadWriteLock lock;
+
+	private int slotCount;
+	private boolean wasClean;
+
+	IdDictionary(File dir, String name) throws IOException {
+		data = new Segment(new File(dir, "gs-" + name + ".dat"));
+		forward = new Segment(new File(dir, "gs-" + name + ".fwd"));
+		slots = new Segment(new File(dir, "gs-" + name + ".hsh"));
+		lock = new ReentrantReadWriteLock();
+
+		if (data.size() < HEADER_SIZE
+				|| data.buffer.getInt(MAGIC_OFFSET) != MAGIC
+				|| data.buffer.getInt(VERSION_OFFSET) != VERSION
+				|| slots.size() < MIN_SLOTS * SLOT_SIZE) {
+			reset();
+			wasClean = false;
+		} else {
+			slotCount = slots.size() / SLOT_SIZE;
+			wasClean = data.buffer.getInt(CLEAN_OFFSET) == 1;
+		}
+
+		//
+		// The dictionary stays dirty until it is closed, so a crash is
+		// detected on the next opening.
+		//
+		data.buffer.putInt(CLEAN_OFFSET, 0);
+		data.buffer.force();
+	}
+
+	/**
+	 * Tell if the dictionary is up to date with a store.
+	 * 
+	 * @param lastTxId
+	 *            id of the last transaction committed in the store
+	 */
+	boolean isValid(long lastTxId) {
+		lock.readLock().lock();
+
+		try {
+			return wasClean && data.buffer.getLong(TX_OFFSET) == lastTxId
+					&& getGarbage() <= getEnd() / 2;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all the ids.
+	 */
+	void reset() throws IOException {
+		lock.writeLock().lock();
+
+		try {
+			data.resize(MIN_DATA);
+			forward.resize(MIN_FORWARD * 8);
+			slots.resize(MIN_SLOTS * SLOT_SIZE);
+			data.clear();
+			forward.clear();
+			slots.clear();
+
+			slotCount = MIN_SLOTS;
+
+			data.buffer.putInt(MAGIC_OFFSET, MAGIC);
+			data.buffer.putInt(VERSION_OFFSET, VERSION);
+			data.buffer.putLong(TX_OFFSET, -1);
+			data.buffer.putInt(SIZE_OFFSET, 0);
+			data.buffer.putLong(END_OFFSET, HEADER_SIZE);
+			data.buffer.putLong(GARBAGE_OFFSET, 0);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the GraphStream id of an element.
+	 * 
+	 * @return the id, or null if the element is unknown
+	 */
+	String getId(long dbId) {
+		lock.readLock().lock();
+
+		try {
+			int record = getRecord(dbId);
+
+			if (record <= 0)
+				return null;
+
+			int length = data.buffer.getInt(record + 8);
+			byte[] bytes = new byte[length];
+
+			for (int i = 0; i < length; i++)
+				bytes[i] = data.buffer.get(record + 12 + i);
+
+			return new String(bytes, UTF8);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the database id of an element.
+	 * 
+	 * @return the database id, or -1 if the element is unknown
+	 */
+	long getDbId(String id) {
+		byte[] bytes = id.getBytes(UTF8);
+		int h = hash(bytes);
+
+		lock.readLock().lock();
+
+		try {
+			int mask = slotCount - 1;
+			int i = h & mask;
+
+			while (true) {
+				long entry = slots.buffer.getLong(i * SLOT_SIZE);
+
+				if (entry == 0)
+					return -1;
+
+				if (slots.buffer.getInt(i * SLOT_SIZE + 8) == h
+						&& matches(getRecord(entry - 1), bytes))
+					return entry - 1;
+
+				i = (i + 1) & mask;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Associate an element with a GraphStream id, replacing its previous id.
+	 */
+	void put(long dbId, String id) throws IOException {
+		byte[] bytes = id.getBytes(UTF8);
+
+		lock.writeLock().lock();
+
+		try {
+			int record = getRecord(dbId);
+
+			if (record > 0) {
+				if (matches(record, bytes))
+					return;
+
+				unlink(dbId, record);
+			}
+
+			long end = getEnd();
+			int length = 12 + bytes.length;
+
+			if (end + length > data.size())
+				data.resize(grow(data.size(), end + length));
+
+			record = (int) end;
+			data.buffer.putLong(record, dbId);
+			data.buffer.putInt(record + 8, bytes.length);
+
+			for (int i = 0; i < bytes.length; i++)
+				data.buffer.put(record + 12 + i, bytes[i]);
+
+			data.buffer.putLong(END_OFFSET, end + length);
+
+			if ((dbId + 1) * 8 > forward.size())
+				forward.resize(grow(forward.size(), (dbId + 1) * 8));
+
+			forward.buffer.putLong((int) (dbId * 8), record);
+
+			int size = data.buffer.getInt(SIZE_OFFSET) + 1;
+			data.buffer.putInt(SIZE_OFFSET, size);
+
+			if (size * 2 > slotCount)
+				rehash(slotCount * 2);
+
+			insert(dbId, hash(bytes));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forget an element.
+	 */
+	void remove(long dbId) {
+		lock.writeLock().lock();
+
+		try {
+			int record = getRecord(dbId);
+
+			if (record > 0)
+				unlink(dbId, record);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Record that the dictionary is up to date with a transaction.
+	 */
+	void commit(long lastTxId) {
+		lock.writeLock().lock();
+
+		try {
+			data.buffer.putLong(TX_OFFSET, lastTxId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	int size() {
+		lock.readLock().lock();
+
+		try {
+			return data.buffer.getInt(SIZE_OFFSET);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Write the dictionary to disk and close its files. A dictionary which
+	 * is not closed cleanly is not valid anymore.
+	 */
+	void close(boolean clean) throws IOException {
+		lock.writeLock().lock();
+
+		try {
+			slots.buffer.force();
+			forward.buffer.force();
+			data.buffer.putInt(CLEAN_OFFSET, clean ? 1 : 0);
+			data.buffer.force();
+		} finally {
+			try {
+				data.close();
+				forward.close();
+				slots.close();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	private long getEnd() {
+		return data.buffer.getLong(END_OFFSET);
+	}
+
+	private long getGarbage() {
+		return data.buffer.getLong(GARBAGE_OFFSET);
+	}
+
+	private int getRecord(long dbId) {
+		if (dbId < 0 || (dbId + 1) * 8 > forward.size())
+			return 0;
+
+		return (int) forward.buffer.getLong((int) (dbId * 8));
+	}
+
+	private boolean matches(int record, byte[] bytes) {
+		if (record <= 0 || data.buffer.getInt(record + 8) != bytes.length)
+			return false;
+
+		for (int i = 0; i < bytes.length; i++)
+			if (data.buffer.get(record + 12 + i) != bytes[i])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Remove the entry of an element from the forward array and from the
+	 * hash table. Its record becomes garbage.
+	 */
+	private void unlink(long dbId, int record) {
+		int length = data.buffer.getInt(record + 8);
+		int h = hash(record + 12, length);
+		int mask = slotCount - 1;
+		int i = h & mask;
+
+		while (true) {
+			long entry = slots.buffer.getLong(i * SLOT_SIZE);
+
+			if (entry == 0)
+				break;
+
+			if (entry - 1 == dbId) {
+				delete(i);
+				break;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		forward.buffer.putLong((int) (dbId * 8), 0);
+		data.buffer.putInt(SIZE_OFFSET, data.buffer.getInt(SIZE_OFFSET) - 1);
+		data.buffer.putLong(GARBAGE_OFFSET, getGarbage() + 12 + length);
+	}
+
+	private void insert(long dbId, int h) {
+		int mask = slotCount - 1;
+		int i = h & mask;
+
+		while (slots.buffer.getLong(i * SLOT_SIZE) != 0)
+			i = (i + 1) & mask;
+
+		slots.buffer.putLong(i * SLOT_SIZE, dbId + 1);
+		slots.buffer.putInt(i * SLOT_SIZE + 8, h);
+	}
+
+	/**
+	 * Empty a slot of the hash table, moving back the following entries of
+	 * its cluster so that no probe sequence is broken.
+	 */
+	private void delete(int i) {
+		int mask = slotCount - 1;
+		int j = i;
+
+		slots.buffer.putLong(i * SLOT_SIZE, 0);
+
+		while (true) {
+			j = (j + 1) & mask;
+
+			long entry = slots.buffer.getLong(j * SLOT_SIZE);
+
+			if (entry == 0)
+				return;
+
+			int h = slots.buffer.getInt(j * SLOT_SIZE + 8);
+			int k = h & mask;
+
+			if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j))
+				continue;
+
+			slots.buffer.putLong(i * SLOT_SIZE, entry);
+			slots.buffer.putInt(i * SLOT_SIZE + 8, h);
+			slots.buffer.putLong(j * SLOT_SIZE, 0);
+			i = j;
+		}
+	}
+
+	private void rehash(int count) throws IOException {
+		long[] entries = new long[slotCount];
+		int[] hashes = new int[slotCount];
+
+		for (int i = 0; i < slotCount; i++) {
+			entries[i] = slots.buffer.getLong(i * SLOT_SIZE);
+			hashes[i] = slots.buffer.getInt(i * SLOT_SIZE + 8);
+		}
+
+		slots.resize(count * SLOT_SIZE);
+		slots.clear();
+		slotCount = count;
+
+		for (int i = 0; i < entries.length; i++)
+			if (entries[i] != 0)
+				insert(entries[i] - 1, hashes[i]);
+	}
+
+	private int hash(int offset, int length) {
+		int h = 0x811C9DC5;
+
+		for (int i = 0; i < length; i++)
+			h = (h ^ (data.buffer.get(offset + i) & 0xFF)) * 0x01000193;
+
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(byte[] bytes) {
+		int h = 0x811C9DC5;
+
+		for (byte b : bytes)
+			h = (h ^ (b & 0xFF)) * 0x01000193;
+
+		return h ^ (h >>> 16);
+	}
+
+	private static int grow(int size, long needed) {
+		long s = size;
+
+		while (s < needed)
+			s <<= 1;
+
+		if (s > Integer.MAX_VALUE)
+			throw new IllegalStateException("id dictionary is full");
+
+		return (int) s;
+	}
+
+	/**
+	 * A file mapped in memory as a whole.
+	 */
+	private static class Segment {
+		final RandomAccessFile file;
+		MappedByteBuffer buffer;
+
+		Segment(File f) throws IOException {
+			file = new RandomAccessFile(f, "rw");
+			map();
+		}
+
+		int size() {
+			return buffer.capacity();
+		}
+
+		void resize(int size) throws IOException {
+			if (buffer != null)
+				buffer.force();
+
+			file.setLength(size);
+			map();
+		}
+
+		void clear() {
+			for (int i = 0; i < buffer.capacity(); i += 8)
+				buffer.putLong(i, 0);
+		}
+
+		void close() throws IOException {
+			file.close();
+		}
+
+		private void map() throws IOException {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					file.length());
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * The part of the store which has been sent to the sinks of a proxy working
+ * in lazy mode. Nodes and relationships are tracked by their database id, so
+ * an element is never sent twice and commits are only forwarded when they
+ * concern elements the sinks hold.
+ */
+class Neighbourhood {
+	protected final Neo4JProxy proxy;
+	protected final HashSet<Long> nodes;
+	protected final HashSet<Long> edges;
+
+	Neighbourhood(Neo4JProxy proxy) {
+		this.proxy = proxy;
+		this.nodes = new HashSet<Long>();
+		this.edges = new HashSet<Long>();
+	}
+
+	synchronized boolean hasNode(long id) {
+		return nodes.contains(id);
+	}
+
+	synchronized boolean hasEdge(long id) {
+		return edges.contains(id);
+	}
+
+	/**
+	 * Track a relationship created between two held nodes.
+	 * 
+	 * @return true if the relationship was not tracked yet
+	 */
+	synchronized boolean addEdge(Relationship r) {
+		return nodes.contains(r.getStartNode().getId())
+				&& nodes.contains(r.getEndNode().getId())
+				&& edges.add(r.getId());
+	}
+
+	/**
+	 * Send a node, unless the sinks already hold it.
+	 * 
+	 * @return true if the node has been sent
+	 */
+	synchronized boolean sendNode(Node n) {
+		if (!nodes.add(n.getId()))
+			return false;
+
+		proxy.sendNode(n);
+		return true;
+	}
+
+	/**
+	 * Send a relationship, and its nodes before it, unless the sinks already
+	 * hold them.
+	 * 
+	 * @return the number of elements sent
+	 */
+	synchronized int sendEdge(Relationship r) {
+		int sent = 0;
+
+		if (sendNode(r.getStartNode()))
+			sent++;
+
+		if (sendNode(r.getEndNode()))
+			sent++;
+
+		if (edges.add(r.getId())) {
+			proxy.sendEdge(r);
+			sent++;
+		}
+
+		return sent;
+	}
+
+	/**
+	 * Stop tracking a node whose deletion has been committed.
+	 * 
+	 * @return true if the node was held by the sinks
+	 */
+	synchronized boolean removeNode(long id) {
+		return nodes.remove(id);
+	}
+
+	/**
+	 * Stop tracking a relationship whose deletion has been committed.
+	 * 
+	 * @return true if the relationship was held by the sinks
+	 */
+	synchronized boolean removeEdge(long id) {
+		return edges.remove(id);
+	}
+
+	/**
+	 * Send the nodes at most {@code depth} hops away from a node, and the
+	 * relationships between the nodes held by the sinks. Nodes are all sent
+	 * before the relationships.
+	 */
+	synchronized void expand(Node start, int depth) {
+		LinkedList<Node> ball = new LinkedList<Node>();
+		LinkedList<Node> frontier = new LinkedList<Node>();
+		HashSet<Long> seen = new HashSet<Long>();
+
+		frontier.add(start);
+		seen.add(start.getId());
+
+		for (int d = 0; frontier.size() > 0; d++) {
+			ball.addAll(frontier);
+
+			if (d == depth)
+				break;
+
+			LinkedList<Node> next = new LinkedList<Node>();
+
+			for (Node n : frontier) {
+				for (Relationship r : n.getRelationships()) {
+					Node m = r.getOtherNode(n);
+
+					if (seen.add(m.getId()))
+						next.add(m);
+				}
+			}
+
+			frontier = next;
+		}
+
+		for (Node n : ball)
+			if (nodes.add(n.getId()))
+				proxy.sendNode(n);
+
+		for (Node n : ball)
+			for (Relationship r : n.getRelationships())
+				if (!edges.contains(r.getId())
+						&& nodes.contains(r.getOtherNode(n).getId())) {
+					edges.add(r.getId());
+					proxy.sendEdge(r);
+				}
+	}
+
+	/**
+	 * Remove from the sinks the neighbours of a node which are only held
+	 * because of it, that is which have no other held neighbour. The node
+	 * itself stays.
+	 */
+	synchronized void collapse(Node center) {
+		long cid = center.getId();
+
+		for (Relationship r : center.getRelationships()) {
+			Node m = r.getOtherNode(center);
+			long mid = m.getId();
+
+			if (mid == cid || !nodes.contains(mid))
+				continue;
+
+			boolean anchored = false;
+
+			for (Relationship r2 : m.getRelationships()) {
+				long oid = r2.getOtherNode(m).getId();
+
+				if (oid != cid && oid != mid && nodes.contains(oid)) {
+					anchored = true;
+					break;
+				}
+			}
+
+			if (anchored)
+				continue;
+
+			for (Relationship r2 : m.getRelationships())
+				if (edges.remove(r2.getId()))
+					proxy.send(StoreEvent.edgeRemoved(proxy.getEdgeId(r2)));
+
+			nodes.remove(mid);
+			proxy.send(StoreEvent.nodeRemoved(proxy.getNodeId(m)));
+		}
+	}
+}
@@ -0,0 +1,4016 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+import org.graphstream.neo4j.tools.Cache;
+import org.graphstream.neo4j.tools.CacheCreationException;
+import org.graphstream.neo4j.tools.LongMap;
+import org.graphstream.neo4j.tools.StripedLock;
+import org.graphstream.stream.AttributeSink;
+import org.graphstream.stream.ElementSink;
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.SourceBase;
+import org.graphstream.stream.db.DatabaseConnectionException;
+import org.graphstream.stream.db.DatabaseProxy;
+import org.graphstream.stream.sync.SinkTime;
+import org.neo4j.cypher.javacompat.ExecutionEngine;
+import org.neo4j.cypher.javacompat.ExecutionResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.kernel.DeadlockDetectedException;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+public class Neo4JProxy extends SourceBase implements DatabaseProxy,
+		TransactionEventHandler<Object> {
+	public static final int DEFAULT_NODE_CACHE_SIZE = 1000;
+	public static final int DEFAULT_EDGE_CACHE_SIZE = 1000;
+
+	/**
+	 * System property which can be used to set the capacity of the node cache
+	 * of proxies created with the default constructor.
+	 */
+	public static final String NODE_CACHE_SIZE_PROPERTY = "org.graphstream.neo4j.nodeCacheSize";
+
+	/**
+	 * System property which can be used to set the capacity of the edge cache
+	 * of proxies created with the default constructor.
+	 */
+	public static final String EDGE_CACHE_SIZE_PROPERTY = "org.graphstream.neo4j.edgeCacheSize";
+
+	/**
+	 * Name of the index mapping GraphStream node ids to database nodes.
+	 */
+	public static final String NODE_INDEX = "gs-nodes";
+
+	/**
+	 * Name of the index mapping GraphStream edge ids to database
+	 * relationships.
+	 */
+	public static final String EDGE_INDEX = "gs-edges";
+
+	/**
+	 * Configuration key set on an index once it has been filled with the
+	 * content of the store. An index without this key is rebuilt on connect.
+	 */
+	protected static final String INDEX_READY_KEY = "gs.ready";
+
+	/**
+	 * Graph property holding the step of the last committed stepBegins event.
+	 */
+	public static final String STEP_KEY = "gs.step";
+
+	/**
+	 * Number of elements indexed per transaction when building the indexes of
+	 * an existing store.
+	 */
+	protected static final int INDEX_BUILD_CHUNK = 10000;
+
+	/**
+	 * Number of consecutive ids of the node or relationship store read by a
+	 * worker when the database content is flushed.
+	 */
+	protected static final int FLUSH_PAGE_SIZE = 10000;
+
+	/**
+	 * Maximum number of relationships deleted in a single transaction when a
+	 * node is removed, unless writes are committed step by step.
+	 */
+	protected static final int DELETE_CHUNK = 10000;
+
+	/**
+	 * Maximum number of ids looked up by a single query of an id index. The
+	 * query parser does not accept more clauses than this.
+	 */
+	protected static final int ID_QUERY_SIZE = 1000;
+
+	/**
+	 * Number of times a transaction which deadlocks with a concurrent one is
+	 * tried again.
+	 */
+	protected static final int COMMIT_RETRIES = 10;
+
+	/**
+	 * Names of the id dictionaries kept in the store directory.
+	 */
+	protected static final String NODE_DICTIONARY = "nodes";
+	protected static final String EDGE_DICTIONARY = "edges";
+
+	/**
+	 * List of opened databases which should be closed if system crash.
+	 */
+	private static final ConcurrentLinkedQueue<GraphDatabaseService> OPENED_DB = new ConcurrentLinkedQueue<GraphDatabaseService>();
+
+	/**
+	 * Register a new opened database.
+	 * 
+	 * @param db
+	 *            the database service
+	 */
+	protected static void registerDatabase(GraphDatabaseService db) {
+		OPENED_DB.add(db);
+	}
+
+	/**
+	 * Unregister a shutdown database. Use this AFTER calling the
+	 * {@link GraphDatabaseService#shutdown()} method of the service.
+	 * 
+	 * @param db
+	 *            the closed database service
+	 */
+	protected static void unregisterDatabase(GraphDatabaseService db) {
+		OPENED_DB.remove(db);
+	}
+
+	//
+	// Here we register a shutdown hook which is call by the virtual machine
+	// even if the application crash. The thread will closed of remaining opened
+	// database.
+	//
+	static {
+		Runnable r = new Runnable() {
+			public void run() {
+				if (OPENED_DB.size() > 0)
+					System.err.printf("Closing %d database%s\n",
+							OPENED_DB.size(), OPENED_DB.size() > 1 ? "s" : "");
+
+				while (OPENED_DB.size() > 0) {
+					GraphDatabaseService db = OPENED_DB.poll();
+					db.shutdown();
+				}
+			}
+		};
+
+		Runtime.getRuntime().addShutdownHook(new Thread(r, "close-db"));
+	}
+
+	GraphDatabaseFactory factory;
+	volatile GraphDatabaseService graphDb;
+	Mode mode;
+
+	/**
+	 * Guards the database against being closed or replaced while it is read
+	 * outside of the writes. Flushes, snapshots, queries and callers of
+	 * {@link #lockStore()} hold the read lock, {@link #disconnect()} and
+	 * {@link #resetStore()} take the write lock before the database is shut
+	 * down.
+	 */
+	final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Times of the events received from each source. It is shared by the
+	 * threads feeding the proxy and protected by its own monitor.
+	 */
+	final SinkTime sinkTime;
+
+	Index<Node> nodeIndex;
+	Index<Relationship> edgeIndex;
+
+	/**
+	 * Cypher engine of the connection, which keeps the plans of the queries.
+	 */
+	ExecutionEngine engine;
+
+	/**
+	 * Loader used instead of the database in the bulk load mode.
+	 */
+	BulkLoader bulkLoader;
+
+	/**
+	 * Dispatcher sending the events of the commits, if asynchronous dispatch
+	 * is enabled.
+	 */
+	volatile EventDispatcher dispatcher;
+
+	boolean lazy;
+	String[] seeds;
+
+	/**
+	 * GraphStream ids of the database nodes and relationships created or
+	 * renamed by commits, indexed by their database id.
+	 */
+	final LongMap<String> nodeIds;
+	final LongMap<String> edgeIds;
+
+	/**
+	 * Persistent dictionaries of the ids, or null if they can not be used.
+	 */
+	volatile IdDictionary nodeDictionary;
+	volatile IdDictionary edgeDictionary;
+
+	/**
+	 * Directory of the opened store.
+	 */
+	File storeDir;
+
+	/**
+	 * Tell if the content of the store is replayed from, and saved to, a
+	 * snapshot.
+	 */
+	boolean snapshots;
+
+	/**
+	 * Change log of the store, if enabled.
+	 */
+	volatile ChangeLog changeLog;
+	boolean changeLogEnabled;
+	long changeLogSegmentSize = ChangeLog.DEFAULT_SEGMENT_SIZE;
+	int changeLogMaxSegments;
+
+	/**
+	 * Versioned history of the store, if enabled.
+	 */
+	volatile History history;
+	boolean historyEnabled;
+	int keyframeInterval;
+
+	/**
+	 * Properties forwarded as attributes.
+	 */
+	volatile AttributeProjection projection = AttributeProjection.ALL;
+
+	/**
+	 * Elements held by the sinks, in lazy mode.
+	 */
+	Neighbourhood neighbourhood;
+
+	Cache<String, Node> nodeCache;
+	Cache<String, Relationship> edgeCache;
+
+	/**
+	 * Number of threads reading the store when the database is flushed.
+	 */
+	int flushThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Maximum number of writes committed in a single transaction.
+	 */
+	volatile int batchSize = 1;
+
+	/**
+	 * Maximum time, in milliseconds, a write can wait before being committed.
+	 * Zero means that there is no time bound.
+	 */
+	volatile long batchDelay = 0;
+
+	/**
+	 * Commit buffered writes when a new step begins.
+	 */
+	volatile boolean stepCommit = false;
+
+	/**
+	 * Step written by the transaction the current thread is committing, so
+	 * that the commit can send the stepBegins event.
+	 */
+	final ThreadLocal<Double> committingStep = new ThreadLocal<Double>();
+
+	/**
+	 * Locks of the elements written without group commit. A write locks the
+	 * ids it refers to, so writes to the same elements are committed in
+	 * order while writes to disjoint parts of the graph are committed
+	 * concurrently.
+	 */
+	final StripedLock writeLocks = new StripedLock();
+
+	/**
+	 * Held by a committing transaction from the end of its beforeCommit until
+	 * its events are logged, so that commits running concurrently are
+	 * appended to the change log and to the history in the order they are
+	 * committed.
+	 */
+	final ReentrantLock logOrder = new ReentrantLock();
+
+	/**
+	 * Monitor held while events are sent to the sinks, which are not
+	 * expected to be thread-safe.
+	 */
+	final Object emission = new Object();
+
+	/**
+	 * First failure of a sink while an event is sent, guarded by the emission
+	 * monitor.
+	 */
+	RuntimeException sinkFailure;
+
+	/**
+	 * Guards registered in the source for each sink, sinkGuards being the
+	 * monitor of both maps.
+	 */
+	final Object sinkGuards = new Object();
+	final IdentityHashMap<AttributeSink, SinkGuard> attributeGuards = new IdentityHashMap<AttributeSink, SinkGuard>();
+	final IdentityHashMap<ElementSink, SinkGuard> elementGuards = new IdentityHashMap<ElementSink, SinkGuard>();
+
+	/**
+	 * Writes waiting to be committed. This list is also used as the monitor
+	 * protecting the batch state.
+	 */
+	final LinkedList<WriteOperation> pendingWrites = new LinkedList<WriteOperation>();
+
+	/**
+	 * Elements created by the batch being committed. They are not visible
+	 * through the cache until the batch is committed.
+	 */
+	final HashMap<String, Node> batchNodes = new HashMap<String, Node>();
+	final HashMap<String, Relationship> batchEdges = new HashMap<String, Relationship>();
+
+	/**
+	 * Ids of the existing elements the pending writes will look up. They are
+	 * resolved together before the batch is committed.
+	 */
+	final HashSet<String> batchNodeIds = new HashSet<String>();
+	final HashSet<String> batchEdgeIds = new HashSet<String>();
+
+	/**
+	 * Ids of the elements the pending writes create. They are not in the
+	 * store yet, so they are left out of the lookups.
+	 */
+	final HashSet<String> batchCreatedNodeIds = new HashSet<String>();
+	final HashSet<String> batchCreatedEdgeIds = new HashSet<String>();
+
+	Timer batchTimer;
+	TimerTask batchTask;
+
+	/**
+	 * Clear the graph by replacing the store with an empty one.
+	 */
+	volatile boolean fastClear = false;
+
+	/**
+	 * Metrics of the proxy, kept across connections. They are registered in
+	 * the platform MBean server while the proxy is connected.
+	 */
+	final ProxyMetrics metrics;
+	ObjectName metricsName;
+
+	public Neo4JProxy() {
+		this(Integer.getInteger(NODE_CACHE_SIZE_PROPERTY,
+				DEFAULT_NODE_CACHE_SIZE), Integer.getInteger(
+				EDGE_CACHE_SIZE_PROPERTY, DEFAULT_EDGE_CACHE_SIZE));
+	}
+
+	/**
+	 * Create a new proxy with custom cache capacities.
+	 * 
+	 * @param nodeCacheSize
+	 *            maximum number of database nodes kept in cache
+	 * @param edgeCacheSize
+	 *            maximum number of database relationships kept in cache
+	 */
+	public Neo4JProxy(int nodeCacheSize, int edgeCacheSize) {
+		this.factory = new GraphDatabaseFactory();
+		this.sinkTime = new SinkTime();
+		this.nodeCache = new NodeCache(nodeCacheSize);
+		this.edgeCache = new EdgeCache(edgeCacheSize);
+		this.nodeIds = new LongMap<String>();
+		this.edgeIds = new LongMap<String>();
+		this.metrics = new ProxyMetrics(this);
+	}
+
+	/**
+	 * Get the metrics of this proxy. They are also available through JMX,
+	 * under the name {@code org.graphstream.neo4j:type=Neo4JProxy,id=<id>}
+	 * where {@code <id>} is the quoted source id of the proxy.
+	 */
+	public ProxyMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Register the metrics in the platform MBean server. A failure does not
+	 * prevent the connection, the metrics are just not visible through JMX.
+	 */
+	protected void registerMetrics() {
+		if (metricsName != null)
+			return;
+
+		try {
+			ObjectName name = new ObjectName(String.format(
+					"org.graphstream.neo4j:type=Neo4JProxy,id=%s",
+					ObjectName.quote(sourceId)));
+
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					name);
+			metricsName = name;
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	protected void unregisterMetrics() {
+		if (metricsName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					metricsName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+
+		metricsName = null;
+	}
+
+	/**
+	 * Get the GraphStream id of a database node. The ids of the elements
+	 * created or renamed by commits are found in the reverse id map, which is
+	 * only filled by the commits. Other ids are resolved through the id
+	 * dictionary, or read from the store, each time they are needed: reading
+	 * the store, for example in a flush, does not make the map grow with the
+	 * size of the graph.
+	 */
+	protected String getNodeId(Node dbNode) {
+		long dbId = dbNode.getId();
+		String id = nodeIds.get(dbId);
+
+		if (id == null) {
+			IdDictionary d = nodeDictionary;
+
+			if (d != null)
+				id = d.getId(dbId);
+
+			if (id == null) {
+				if (dbNode.hasProperty("id"))
+					id = dbNode.getProperty("id").toString();
+				else
+					id = Long.toString(dbId);
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Get the GraphStream id of a database relationship.
+	 * 
+	 * @see #getNodeId(Node)
+	 */
+	protected String getEdgeId(Relationship dbEdge) {
+		long dbId = dbEdge.getId();
+		String id = edgeIds.get(dbId);
+
+		if (id == null) {
+			IdDictionary d = edgeDictionary;
+
+			if (d != null)
+				id = d.getId(dbId);
+
+			if (id == null) {
+				if (dbEdge.hasProperty("id"))
+					id = dbEdge.getProperty("id").toString();
+				else
+					id = Long.toString(dbId);
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Set the number of threads reading the store when the database content
+	 * is flushed.
+	 * 
+	 * @param threads
+	 *            number of reading threads, at least one
+	 */
+	public void setFlushThreads(int threads) {
+		this.flushThreads = Math.max(1, threads);
+	}
+
+	/**
+	 * Read all the database content and produce events that describe the
+	 * current graph state.
+	 */
+	protected void flushDB() {
+		if (graphDb == null)
+			return;
+
+		try {
+			flushDB(new FlushCursor());
+		} catch (DatabaseConnectionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Read the database content from the position of a cursor and produce
+	 * events that describe the current graph state. The store is read by
+	 * pages, each one in its own transaction, and the cursor is moved after
+	 * each element sent. If the flush fails or the calling thread is
+	 * interrupted, an exception is thrown and the flush can be resumed later
+	 * with the same cursor, from the element following the last one sent.
+	 * A sink failing on an event does not prevent the other sinks from
+	 * getting it, and the element is not sent again.
+	 * 
+	 * @param cursor
+	 *            position from which the flush starts
+	 * @throws DatabaseConnectionException
+	 *             if the store can not be read or if the flush is interrupted
+	 */
+	public void flushDB(FlushCursor cursor) throws DatabaseConnectionException {
+		lockStore();
+
+		long start = System.nanoTime();
+		boolean success = false;
+
+		metrics.flushStarted(cursor);
+
+		try {
+			new Flusher(this, flushThreads, FLUSH_PAGE_SIZE).flush(cursor);
+			success = true;
+		} catch (ExecutionException e) {
+			throw new DatabaseConnectionException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseConnectionException(e);
+		} catch (RuntimeException e) {
+			throw new DatabaseConnectionException(e);
+		} finally {
+			unlockStore();
+			metrics.flushEnded(cursor, success, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Keep the store from being closed or replaced until
+	 * {@link #unlockStore()} is called. Results of
+	 * {@link #executeCypher(String)} are read lazily, they have to be read
+	 * before the store is unlocked. The lock can be taken several times by a
+	 * thread, and has to be released as many times.
+	 * 
+	 * @throws DatabaseConnectionException
+	 *             if no database is opened, the lock is then not held
+	 */
+	public void lockStore() throws DatabaseConnectionException {
+		storeLock.readLock().lock();
+
+		if (graphDb == null) {
+			storeLock.readLock().unlock();
+			throw new DatabaseConnectionException("No graph database is opened");
+		}
+	}
+
+	/**
+	 * Release the lock taken by {@link #lockStore()}.
+	 */
+	public void unlockStore() {
+		storeLock.readLock().unlock();
+	}
+
+	/**
+	 * Read the database content and send it to a single sink, instead of the
+	 * sinks of this proxy. The sink receives the events from a source of its
+	 * own, in the same order as a flush of the proxy.
+	 * 
+	 * @param sink
+	 *            the sink receiving the content of the store
+	 * @throws DatabaseConnectionException
+	 *             if the store can not be read, if the sink fails or if the
+	 *             flush is interrupted
+	 */
+	public void flushDB(Sink sink) throws DatabaseConnectionException {
+		lockStore();
+
+		ChangeLog.ReplaySource source = new ChangeLog.ReplaySource();
+		source.addSink(sink);
+
+		try {
+			new Flusher(this, source, flushThreads, FLUSH_PAGE_SIZE)
+					.flush(new FlushCursor());
+		} catch (ExecutionException e) {
+			throw new DatabaseConnectionException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseConnectionException(e);
+		} catch (RuntimeException e) {
+			throw new DatabaseConnectionException(e);
+		} finally {
+			source.removeSink(sink);
+			unlockStore();
+		}
+	}
+
+	/**
+	 * Enable or disable snapshots. When enabled, {@link #disconnect()} saves
+	 * the content of the store in a compact binary file of the store
+	 * directory, and {@link #connect(String, Mode)} replays this file instead
+	 * of reading the store if no transaction has been committed since. This
+	 * has to be set before {@link #connect(String, Mode)}. Write-only
+	 * connections do not replay the store, so they do not save snapshots
+	 * either; {@link #exportSnapshot()} can still be called explicitly.
+	 * 
+	 * @param enabled
+	 *            true to use snapshots
+	 */
+	public void setSnapshotEnabled(boolean enabled) {
+		this.snapshots = enabled;
+	}
+
+	/**
+	 * Save the current content of the store in a snapshot.
+	 * 
+	 * @throws DatabaseConnectionException
+	 *             if no store is opened or if the snapshot can not be written
+	 */
+	public void exportSnapshot() throws DatabaseConnectionException {
+		lockStore();
+
+		try {
+			Snapshot.write(new File(storeDir, Snapshot.FILE_NAME),
+					getLastTxId(), graphDb, this);
+		} catch (IOException e) {
+			throw new DatabaseConnectionException(e);
+		} finally {
+			unlockStore();
+		}
+	}
+
+	/**
+	 * Replay the snapshot of the store if it is up to date. If the replay
+	 * fails, the sinks have received a part of the graph only, and reading
+	 * the store would send this part again: the failure is thrown, and the
+	 * snapshot is deleted so that the store is read on the next connection.
+	 * 
+	 * @return true if the snapshot has been replayed, false if the store has
+	 *         to be read
+	 * @throws DatabaseConnectionException
+	 *             if the snapshot can not be replayed completely
+	 */
+	protected boolean replaySnapshot() throws DatabaseConnectionException {
+		File file = new File(storeDir, Snapshot.FILE_NAME);
+		AttributeProjection ap = projection;
+
+		//
+		// A filter needs the elements themselves, which are not read when
+		// replaying a snapshot.
+		//
+		if (!snapshots || ap.hasFilter()
+				|| !Snapshot.isValid(file, getLastTxId()))
+			return false;
+
+		try {
+			Snapshot.replay(file, this, ap);
+		} catch (IOException e) {
+			file.delete();
+			throw new DatabaseConnectionException(e);
+		} catch (RuntimeException e) {
+			file.delete();
+			throw new DatabaseConnectionException(e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Enable or disable the change log. When enabled, the events of each
+	 * commit are appended to a log in the store directory, with a sequence
+	 * number, so that a client can later get the changes it has missed with
+	 * {@link #replayChanges(long, Sink)}. All the attributes are logged,
+	 * whatever the projection of the proxy, and commits are logged in the
+	 * order they are committed. This has to be set before
+	 * {@link #connect(String, Mode)}.
+	 * 
+	 * @param enabled
+	 *            true to log the changes
+	 * @param segmentSize
+	 *            size in bytes above which the log starts a new segment file
+	 * @param maxSegments
+	 *            number of segments kept, the oldest being deleted, or zero
+	 *            to keep all of them
+	 */
+	public void setChangeLogEnabled(boolean enabled, long segmentSize,
+			int maxSegments) {
+		this.changeLogEnabled = enabled;
+		this.changeLogSegmentSize = segmentSize;
+		this.changeLogMaxSegments = maxSegments;
+	}
+
+	/**
+	 * Enable or disable the change log, with segments of 64MB which are all
+	 * kept.
+	 * 
+	 * @see #setChangeLogEnabled(boolean, long, int)
+	 */
+	public void setChangeLogEnabled(boolean enabled) {
+		setChangeLogEnabled(enabled, ChangeLog.DEFAULT_SEGMENT_SIZE, 0);
+	}
+
+	/**
+	 * Sequence number of the last commit written in the change log, zero if
+	 * the log is empty.
+	 * 
+	 * @throws DatabaseConnectionException
+	 *             if the change log is not opened
+	 */
+	public long getChangeSequence() throws DatabaseConnectionException {
+		ChangeLog log = changeLog;
+
+		if (log == null)
+			throw new DatabaseConnectionException("No change log is opened");
+
+		return log.getLastSequence();
+	}
+
+	/**
+	 * Send to a sink the changes committed after a sequence number. The sink
+	 * receives the events from a source of its own, not from this proxy. The
+	 * log holds all the attributes, only those whose key passes the
+	 * whitelist and the blacklist are sent; the attribute filter is not
+	 * applied.
+	 * 
+	 * @param since
+	 *            last sequence number known by the sink, zero for the whole
+	 *            log
+	 * @param sink
+	 *            the sink receiving the changes
+	 * @return the sequence number of the last change sent
+	 * @throws DatabaseConnectionException
+	 *             if the change log is not opened, can not be read or does
+	 *             not hold all the changes following the sequence; the sink
+	 *             then has to get the whole graph again
+	 */
+	public long replayChanges(long since, Sink sink)
+			throws DatabaseConnectionException {
+		ChangeLog log = changeLog;
+
+		if (log == null)
+			throw new DatabaseConnectionException("No change log is opened");
+
+		try {
+			return log.replay(since, sink, projection);
+		} catch (IOException e) {
+			throw new DatabaseConnectionException(e);
+		} catch (IllegalArgumentException e) {
+			throw new DatabaseConnectionException(e);
+		}
+	}
+
+	protected void closeChangeLog() {
+		ChangeLog log = changeLog;
+
+		changeLog = null;
+
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Enable or disable the versioned history. When enabled, the events of
+	 * each commit are appended to a history in the store directory, stamped
+	 * with the step of the last stepBegins event, and every
+	 * {@code keyframeInterval} steps a snapshot of the graph is kept. The
+	 * events between two steps, and the state of the graph at a step, can
+	 * then be sent to a sink with {@link #replayHistory(double, double, Sink)}
+	 * and {@link #replayState(double, Sink)}. The history holds all the
+	 * attributes, whatever the projection of the proxy. Keyframes are built
+	 * in the background from the history itself, the store is only read once,
+	 * when the history of a store which is not empty is created. This has to
+	 * be set before {@link #connect(String, Mode)}.
+	 * 
+	 * @param enabled
+	 *            true to keep the history
+	 * @param keyframeInterval
+	 *            number of steps between two keyframes, zero to take no
+	 *            keyframe, in which case states are rebuilt from the start of
+	 *            the history
+	 */
+	public void setHistoryEnabled(boolean enabled, int keyframeInterval) {
+		this.historyEnabled = enabled;
+		this.keyframeInterval = Math.max(0, keyframeInterval);
+	}
+
+	/**
+	 * Send to a sink the events of the history stamped with a step between
+	 * two bounds, in the order they have been committed. The sink receives
+	 * the events from a source of its own, not from this proxy. As with
+	 * {@link #replayChanges(long, Sink)}, the attribute filter is not
+	 * applied to the logged events.
+	 * 
+	 * @param from
+	 *            first step, included, {@code Double.NEGATIVE_INFINITY} to
+	 *            include the events committed before the first step
+	 * @param to
+	 *            last step, included
+	 * @param sink
+	 *            the sink receiving the events
+	 * @return the number of events sent
+	 * @throws DatabaseConnectionException
+	 *             if the history is not opened or can not be read
+	 */
+	public long replayHistory(double from, double to, Sink sink)
+			throws DatabaseConnectionException {
+		History h = history;
+
+		if (h == null)
+			throw new DatabaseConnectionException("No history is opened");
+
+		try {
+			return h.replayEvents(from, to, sink, projection);
+		} catch (IOException e) {
+			throw new DatabaseConnectionException(e);
+		}
+	}
+
+	/**
+	 * Send to a sink the events describing the graph as it was at the end of
+	 * a step. The last keyframe taken before the step is sent, followed by
+	 * the events committed from this keyframe up to the step. The sink
+	 * receives the events from a source of its own, not from this proxy.
+	 * 
+	 * @param step
+	 *            the step
+	 * @param sink
+	 *            the sink receiving the events
+	 * @throws DatabaseConnectionException
+	 *             if the history is not opened or can not be read
+	 */
+	public void replayState(double step, Sink sink)
+			throws DatabaseConnectionException {
+		History h = history;
+
+		if (h == null)
+			throw new DatabaseConnectionException("No history is opened");
+
+		try {
+			h.replayState(step, sink, projection);
+		} catch (IOException e) {
+			throw new DatabaseConnectionException(e);
+		}
+	}
+
+	protected void closeHistory() {
+		History h = history;
+
+		history = null;
+
+		if (h != null) {
+			try {
+				h.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Send the events describing a node read from the store.
+	 */
+	void flushNode(String nodeId, String[] keys, Object[] values) {
+		metrics.flushed();
+		metrics.emitted(StoreEvent.Type.NODE_ADDED);
+		metrics.emitted(StoreEvent.Type.NODE_ATTRIBUTE_ADDED, keys.length);
+
+		synchronized (emission) {
+			sendNodeAdded(sourceId, nodeId);
+
+			for (int i = 0; i < keys.length; i++)
+				sendNodeAttributeAdded(sourceId, nodeId, keys[i], values[i]);
+
+			checkSinks();
+		}
+	}
+
+	/**
+	 * Send the events describing a relationship read from the store.
+	 */
+	void flushEdge(String edgeId, String src, String trg, String[] keys,
+			Object[] values) {
+		metrics.flushed();
+		metrics.emitted(StoreEvent.Type.EDGE_ADDED);
+		metrics.emitted(StoreEvent.Type.EDGE_ATTRIBUTE_ADDED, keys.length);
+
+		synchronized (emission) {
+			sendEdgeAdded(sourceId, edgeId, src, trg, false);
+
+			for (int i = 0; i < keys.length; i++)
+				sendEdgeAttributeAdded(sourceId, edgeId, keys[i], values[i]);
+
+			checkSinks();
+		}
+	}
+
+	/**
+	 * Send the events describing a node of the store and its attributes.
+	 */
+	void sendNode(Node n) {
+		String nodeId = getNodeId(n);
+
+		synchronized (emission) {
+			metrics.emitted(StoreEvent.Type.NODE_ADDED);
+			sendNodeAdded(sourceId, nodeId);
+
+			for (String key : projection.keys(n)) {
+				metrics.emitted(StoreEvent.Type.NODE_ATTRIBUTE_ADDED);
+				sendNodeAttributeAdded(sourceId, nodeId, key,
+						n.getProperty(key));
+			}
+
+			checkSinks();
+		}
+	}
+
+	/**
+	 * Send the events describing a relationship of the store and its
+	 * attributes.
+	 */
+	void sendEdge(Relationship r) {
+		String edgeId = getEdgeId(r);
+		String src = getNodeId(r.getStartNode());
+		String trg = getNodeId(r.getEndNode());
+
+		synchronized (emission) {
+			metrics.emitted(StoreEvent.Type.EDGE_ADDED);
+			sendEdgeAdded(sourceId, edgeId, src, trg, false);
+
+			for (String key : projection.keys(r)) {
+				metrics.emitted(StoreEvent.Type.EDGE_ATTRIBUTE_ADDED);
+				sendEdgeAttributeAdded(sourceId, edgeId, key,
+						r.getProperty(key));
+			}
+
+			checkSinks();
+		}
+	}
+
+	/**
+	 * Only forward the properties with the given keys as attributes, when
+	 * the store is flushed and when commits are propagated. The other
+	 * properties are not read at all during a flush.
+	 * 
+	 * @param keys
+	 *            keys of the forwarded properties; with no key, or null, all
+	 *            the properties are forwarded
+	 */
+	public synchronized void setAttributeWhitelist(String... keys) {
+		projection = projection.withWhitelist(keys);
+	}
+
+	/**
+	 * Never forward the properties with the given keys as attributes.
+	 * 
+	 * @param keys
+	 *            keys of the ignored properties; with no key, or null, none is
+	 *            ignored
+	 */
+	public synchronized void setAttributeBlacklist(String... keys) {
+		projection = projection.withBlacklist(keys);
+	}
+
+	/**
+	 * Set a filter deciding, element by element, which properties are
+	 * forwarded as attributes. It is applied after the whitelist and the
+	 * blacklist.
+	 * 
+	 * @param filter
+	 *            the filter, or null to remove it
+	 */
+	public synchronized void setAttributeFilter(AttributeFilter filter) {
+		projection = projection.withFilter(filter);
+	}
+
+	/**
+	 * Enable or disable the lazy mode. In lazy mode, connecting to a database
+	 * does not replay the whole store: only the given seed nodes are sent,
+	 * and more of the graph is loaded on demand with
+	 * {@link #expand(String, int)}. Commits are only forwarded to the sinks
+	 * when they concern elements the sinks already hold. This has to be set
+	 * before {@link #connect(String, Mode)}.
+	 * 
+	 * @param lazy
+	 *            true to enable the lazy mode
+	 * @param seeds
+	 *            ids of the nodes sent when connecting
+	 */
+	public void setLazyLoading(boolean lazy, String... seeds) {
+		this.lazy = lazy;
+		this.seeds = seeds;
+	}
+
+	/**
+	 * Send the nodes at most {@code depth} hops away from a node, and the
+	 * edges between the nodes held by the sinks. Elements which have already
+	 * been sent are not sent again. This is only available in lazy mode.
+	 * 
+	 * @param nodeId
+	 *            id of the node to expand
+	 * @param depth
+	 *            number of hops, zero to send only the node
+	 */
+	public void expand(String nodeId, int depth) {
+		Neighbourhood nh = neighbourhood;
+
+		if (nh == null)
+			throw new IllegalStateException("lazy mode is not enabled");
+
+		Node n = getDBNode(nodeId);
+
+		if (n == null) {
+			System.err.printf("unknown node '%s'\n", nodeId);
+			return;
+		}
+
+		nh.expand(n, depth);
+	}
+
+	/**
+	 * Remove from the sinks the neighbours of a node which are only held
+	 * because of it, with their edges. The node itself stays. This is only
+	 * available in lazy mode.
+	 * 
+	 * @param nodeId
+	 *            id of the node to collapse
+	 */
+	public void collapse(String nodeId) {
+		Neighbourhood nh = neighbourhood;
+
+		if (nh == null)
+			throw new IllegalStateException("lazy mode is not enabled");
+
+		Node n = getDBNode(nodeId);
+
+		if (n == null) {
+			System.err.printf("unknown node '%s'\n", nodeId);
+			return;
+		}
+
+		nh.collapse(n);
+	}
+
+	protected Node getDBNode(String nodeId) {
+		try {
+			return nodeCache.get(nodeId);
+		} catch (CacheCreationException e) {
+			metrics.lookupFailed();
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Get the database nodes of several GraphStream ids. Ids missing from
+	 * the cache are resolved together.
+	 * 
+	 * @return the nodes found, unknown ids are not part of the map
+	 */
+	protected Map<String, Node> getDBNodes(Collection<String> nodeIds) {
+		try {
+			return nodeCache.getAll(nodeIds);
+		} catch (CacheCreationException e) {
+			metrics.lookupFailed();
+			e.printStackTrace();
+			return Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * Get the database relationships of several GraphStream ids. Ids missing
+	 * from the cache are resolved together.
+	 * 
+	 * @return the relationships found, unknown ids are not part of the map
+	 */
+	protected Map<String, Relationship> getDBEdges(Collection<String> edgeIds) {
+		try {
+			return edgeCache.getAll(edgeIds);
+		} catch (CacheCreationException e) {
+			metrics.lookupFailed();
+			e.printStackTrace();
+			return Collections.emptyMap();
+		}
+	}
+
+	protected Relationship getDBEdge(String edgeId) {
+		try {
+			return edgeCache.get(edgeId);
+		} catch (CacheCreationException e) {
+			metrics.lookupFailed();
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Open the id indexes of the database. Indexes which have not been
+	 * completely built yet, for example because the store has been created
+	 * without this proxy, are filled with the content of the store.
+	 */
+	protected void openIndexes() {
+		IndexManager im = graphDb.index();
+
+		nodeIndex = im.forNodes(NODE_INDEX);
+		edgeIndex = im.forRelationships(EDGE_INDEX);
+
+		if (!isIndexReady(nodeIndex) || !isIndexReady(edgeIndex))
+			buildIndexes();
+	}
+
+	private boolean isIndexReady(Index<?> index) {
+		return "true".equals(graphDb.index().getConfiguration(index)
+				.get(INDEX_READY_KEY));
+	}
+
+	/**
+	 * Index the id of all the nodes and relationships of the store. The work
+	 * is split in transactions of {@link #INDEX_BUILD_CHUNK} elements so that
+	 * large stores can be indexed without exhausting the memory.
+	 */
+	protected void buildIndexes() {
+		GlobalGraphOperations op = GlobalGraphOperations.at(graphDb);
+
+		indexAll(nodeIndex, op.getAllNodes());
+		indexAll(edgeIndex, op.getAllRelationships());
+	}
+
+	private <T extends PropertyContainer> void indexAll(Index<T> index,
+			Iterable<T> elements) {
+		Transaction tx = graphDb.beginTx();
+		int count = 0;
+
+		try {
+			for (T e : elements) {
+				if (!e.hasProperty("id"))
+					continue;
+
+				index.remove(e, "id");
+				index.add(e, "id", e.getProperty("id"));
+
+				if (++count % INDEX_BUILD_CHUNK == 0) {
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+				}
+			}
+
+			graphDb.index().setConfiguration(index, INDEX_READY_KEY, "true");
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+	}
+
+	/**
+	 * Get the first element of an index hits, or null if there is no hit.
+	 */
+	private static <T> T first(IndexHits<T> hits) {
+		try {
+			return hits.hasNext() ? hits.next() : null;
+		} finally {
+			hits.close();
+		}
+	}
+
+	/**
+	 * Look several ids up in an id index, with one query for up to
+	 * {@link #ID_QUERY_SIZE} ids. The elements found are put in a map, under
+	 * their id.
+	 */
+	private static <T extends PropertyContainer> void queryIds(Index<T> index,
+			List<String> ids, Map<String, T> found) {
+		for (int from = 0; from < ids.size(); from += ID_QUERY_SIZE) {
+			List<String> chunk = ids.subList(from,
+					Math.min(ids.size(), from + ID_QUERY_SIZE));
+			StringBuilder query = new StringBuilder();
+
+			for (String id : chunk) {
+				query.append(query.length() == 0 ? "\"" : " \"");
+				query.append(id.replace("\\", "\\\\").replace("\"", "\\\""));
+				query.append('"');
+			}
+
+			HashSet<String> wanted = new HashSet<String>(chunk);
+			IndexHits<T> hits = index.query("id", query.toString());
+
+			try {
+				for (T e : hits) {
+					Object id = e.getProperty("id", null);
+
+					if (id != null && wanted.contains(id.toString()))
+						found.put(id.toString(), e);
+				}
+			} finally {
+				hits.close();
+			}
+		}
+	}
+
+	/**
+	 * Enable group commit. Writes produced by sink events are buffered and
+	 * committed in a single transaction once the buffer holds
+	 * {@code maxEvents} writes, or once the oldest write has waited
+	 * {@code maxDelay} milliseconds. A bound lower than one is ignored, and if
+	 * both bounds are ignored writes are only committed by {@link #flush()}
+	 * and {@link #disconnect()}. Calling {@code setGroupCommit(1, 0)} restores
+	 * the default behavior, one transaction per event.
+	 * 
+	 * @param maxEvents
+	 *            maximum number of writes in a batch
+	 * @param maxDelay
+	 *            maximum delay in milliseconds before a write is committed
+	 */
+	public void setGroupCommit(int maxEvents, long maxDelay) {
+		synchronized (pendingWrites) {
+			stepCommit = false;
+			batchSize = maxEvents < 1 ? Integer.MAX_VALUE : maxEvents;
+			batchDelay = maxDelay < 1 ? 0 : maxDelay;
+		}
+
+		flush();
+	}
+
+	/**
+	 * Enable step commit. Writes produced by sink events are buffered from a
+	 * stepBegins event to the next one, and committed in a single transaction
+	 * which also records the step in the {@link #STEP_KEY} graph property.
+	 * Writes which are not followed by a new step are committed by
+	 * {@link #flush()} and {@link #disconnect()}. This replaces the bounds
+	 * set by {@link #setGroupCommit(int, long)}, and calling it again disables
+	 * step commit.
+	 * 
+	 * @param enabled
+	 *            true to commit writes step by step, false to commit one
+	 *            transaction per event
+	 */
+	public void setStepCommit(boolean enabled) {
+		setGroupCommit(enabled ? 0 : 1, 0);
+		stepCommit = enabled;
+	}
+
+	/**
+	 * Tell if writes are committed step by step.
+	 */
+	public boolean isStepCommit() {
+		return stepCommit;
+	}
+
+	/**
+	 * Get the step of the last stepBegins event committed in the store.
+	 * Steps are committed with step commit, or when the change log or the
+	 * history is enabled, else stepBegins events are ignored.
+	 * 
+	 * @return the step, or {@code Double.NaN} if no step has been committed
+	 * @throws DatabaseConnectionException
+	 *             if no database is opened
+	 */
+	public double getStep() throws DatabaseConnectionException {
+		if (graphDb == null)
+			throw new DatabaseConnectionException("No graph database is opened");
+
+		Object step = getGraphProperties().getProperty(STEP_KEY, null);
+		return step instanceof Number ? ((Number) step).doubleValue()
+				: Double.NaN;
+	}
+
+	/**
+	 * Properties of the graph itself. They are stored with the nodes and
+	 * relationships, and written in the same transactions, but are not seen
+	 * as elements of the graph.
+	 */
+	protected PropertyContainer getGraphProperties() {
+		return ((GraphDatabaseAPI) graphDb).getNodeManager()
+				.getGraphProperties();
+	}
+
+	/**
+	 * Submit a write. Without group commit, the write is committed at once in
+	 * the calling thread, while holding the locks of the given ids. Else it is
+	 * buffered until the batch is full or too old, batches being committed one
+	 * at a time.
+	 * 
+	 * @param op
+	 *            the write
+	 * @param ids
+	 *            ids of the elements written, or nothing if the write
+	 *            concerns the whole graph
+	 * @throws WriteFailedException
+	 *             if the write, or the batch it completes, can not be applied
+	 */
+	protected void write(WriteOperation op, String... ids) {
+		if (batchSize == 1 && batchDelay == 0) {
+			if (ids.length == 0)
+				writeLocks.lockAll();
+			else
+				writeLocks.lock((Object[]) ids);
+
+			try {
+				commitNow(op);
+			} finally {
+				if (ids.length == 0)
+					writeLocks.unlockAll();
+				else
+					writeLocks.unlock((Object[]) ids);
+			}
+
+			return;
+		}
+
+		synchronized (pendingWrites) {
+			pendingWrites.add(op);
+
+			if (pendingWrites.size() >= batchSize)
+				flush();
+			else if (batchDelay > 0 && batchTask == null) {
+				batchTask = new TimerTask() {
+					public void run() {
+						//
+						// Nobody waits for this commit, the failure can only
+						// be reported here.
+						//
+						try {
+							flush();
+						} catch (RuntimeException e) {
+							e.printStackTrace();
+						}
+					}
+				};
+
+				if (batchTimer == null)
+					batchTimer = new Timer("neo4j-group-commit", true);
+
+				batchTimer.schedule(batchTask, batchDelay);
+			}
+		}
+	}
+
+	/**
+	 * Submit a write which removes a node, with its relationships.
+	 * 
+	 * @see #writeRelated(WriteOperation, boolean, String)
+	 */
+	protected void writeNode(WriteOperation op, String nodeId) {
+		writeRelated(op, true, nodeId);
+	}
+
+	/**
+	 * Submit a write to an existing relationship.
+	 * 
+	 * @see #writeRelated(WriteOperation, boolean, String)
+	 */
+	protected void writeEdge(WriteOperation op, String edgeId) {
+		writeRelated(op, false, edgeId);
+	}
+
+	/**
+	 * Submit a write whose locks depend on the relationships of the store.
+	 * Without group commit, the ids to lock are read again once they are
+	 * locked: a relationship committed meanwhile adds ids, and the locks are
+	 * then taken again with them. An element being locked, no relationship
+	 * can be added to it or removed from it, so the ids read last are those
+	 * the write sees.
+	 */
+	private void writeRelated(WriteOperation op, boolean node, String id) {
+		if (batchSize != 1 || batchDelay != 0) {
+			write(op, id);
+			return;
+		}
+
+		String[] ids = node ? nodeLockIds(id) : edgeLockIds(id);
+
+		for (;;) {
+			writeLocks.lock((Object[]) ids);
+
+			String[] current = node ? nodeLockIds(id) : edgeLockIds(id);
+
+			if (Arrays.asList(ids).containsAll(Arrays.asList(current)))
+				break;
+
+			writeLocks.unlock((Object[]) ids);
+			ids = current;
+		}
+
+		try {
+			commitNow(op);
+		} finally {
+			writeLocks.unlock((Object[]) ids);
+		}
+	}
+
+	/**
+	 * Commit a write on its own, in the calling thread.
+	 */
+	private void commitNow(WriteOperation op) {
+		if (graphDb != null)
+			commitWithRetries(Collections.singletonList(op));
+	}
+
+	/**
+	 * Commit all the buffered writes in a single transaction. If a write
+	 * fails, for example because it refers to an unknown element, none of the
+	 * writes of the batch is committed and the batch is dropped.
+	 * 
+	 * @throws WriteFailedException
+	 *             if a write of the batch can not be applied
+	 */
+	public void flush() {
+		synchronized (pendingWrites) {
+			if (batchTask != null) {
+				batchTask.cancel();
+				batchTask = null;
+			}
+
+			if (pendingWrites.size() == 0 || graphDb == null)
+				return;
+
+			try {
+				prefetch();
+				commitWithRetries(pendingWrites);
+			} finally {
+				pendingWrites.clear();
+				batchNodes.clear();
+				batchEdges.clear();
+				batchNodeIds.clear();
+				batchEdgeIds.clear();
+				batchCreatedNodeIds.clear();
+				batchCreatedEdgeIds.clear();
+			}
+		}
+	}
+
+	/**
+	 * Remember ids of existing elements a write will look up, when writes
+	 * are committed in batches. Elements created by a pending write are not
+	 * looked up.
+	 */
+	private void willResolve(HashSet<String> ids, HashSet<String> created,
+			String... elementIds) {
+		if (batchSize == 1 && batchDelay == 0)
+			return;
+
+		synchronized (pendingWrites) {
+			for (String id : elementIds)
+				if (!created.contains(id))
+					ids.add(id);
+		}
+	}
+
+	/**
+	 * Remember the id of an element a pending write creates, when writes are
+	 * committed in batches.
+	 */
+	private void willCreate(HashSet<String> ids, HashSet<String> created,
+			String elementId) {
+		if (batchSize == 1 && batchDelay == 0)
+			return;
+
+		synchronized (pendingWrites) {
+			ids.remove(elementId);
+			created.add(elementId);
+		}
+	}
+
+	/**
+	 * Resolve the elements the pending writes will look up, with one query
+	 * per kind of element instead of one per write. A burst of relationships
+	 * between nodes which are not cached costs a single index query.
+	 */
+	private void prefetch() {
+		if (batchNodeIds.size() > 1)
+			getDBNodes(batchNodeIds);
+
+		if (batchEdgeIds.size() > 1)
+			getDBEdges(batchEdgeIds);
+	}
+
+	/**
+	 * Commit writes, trying again if the transaction has been rolled back
+	 * because of a deadlock with a concurrent transaction. Other failures
+	 * would fail again, they are not retried.
+	 * 
+	 * @throws WriteFailedException
+	 *             if a write can not be applied, if the transaction can not
+	 *             be committed, or if it is still deadlocked after the last
+	 *             retry
+	 */
+	protected void commitWithRetries(List<WriteOperation> ops) {
+		for (int i = 0;; i++) {
+			RuntimeException deadlock = null;
+
+			try {
+				if (commit(ops))
+					return;
+			} catch (WriteFailedException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				if (!isDeadlock(e))
+					throw new WriteFailedException("commit failed", e);
+
+				deadlock = e;
+			}
+
+			if (i == COMMIT_RETRIES)
+				throw new WriteFailedException(String.format(
+						"deadlocked %d times", COMMIT_RETRIES + 1), deadlock);
+
+			//
+			// Elements created by the failed attempt do not exist.
+			//
+			if (batching()) {
+				batchNodes.clear();
+				batchEdges.clear();
+			}
+		}
+	}
+
+	/**
+	 * Tell if a failure has been caused by a deadlock, for example a
+	 * transaction failing to commit because a lock could not be taken.
+	 */
+	private static boolean isDeadlock(Throwable e) {
+		for (; e != null; e = e.getCause())
+			if (e instanceof DeadlockDetectedException)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Apply writes in a single transaction. The writes are committed
+	 * together or not at all: if one of them fails, the transaction is rolled
+	 * back and the failure is thrown. Concurrent transactions can still
+	 * deadlock in the store, the victim is rolled back and can be tried
+	 * again.
+	 * 
+	 * @return false if the transaction has been rolled back because of a
+	 *         deadlock
+	 * @throws WriteFailedException
+	 *             if a write can not be applied
+	 */
+	protected boolean commit(List<WriteOperation> ops) {
+		Transaction tx = graphDb.beginTx();
+		long start = System.nanoTime();
+		boolean success = false;
+		boolean deadlock = false;
+
+		try {
+			int index = 0;
+
+			for (WriteOperation op : ops) {
+				try {
+					op.apply();
+				} catch (DeadlockDetectedException e) {
+					throw e;
+				} catch (RuntimeException e) {
+					metrics.writeSkipped();
+					throw new WriteFailedException(String.format(
+							"write %d of %d failed", index + 1, ops.size()), e);
+				}
+
+				index++;
+			}
+
+			tx.success();
+			success = true;
+		} catch (DeadlockDetectedException e) {
+			tx.failure();
+			deadlock = true;
+		} catch (RuntimeException e) {
+			tx.failure();
+			throw e;
+		} catch (Error e) {
+			tx.failure();
+			throw e;
+		} finally {
+			try {
+				tx.finish();
+			} catch (RuntimeException e) {
+				success = false;
+				throw e;
+			} finally {
+				committingStep.remove();
+				metrics.committed(success, System.nanoTime() - start);
+			}
+		}
+
+		return !deadlock;
+	}
+
+	/**
+	 * Ids locked by the removal of a node, which also removes its
+	 * relationships.
+	 */
+	protected String[] nodeLockIds(String nodeId) {
+		if (batchSize != 1 || batchDelay != 0)
+			return new String[] { nodeId };
+
+		ArrayList<String> ids = new ArrayList<String>();
+		ids.add(nodeId);
+
+		try {
+			Node n = nodeCache.get(nodeId);
+
+			for (Relationship r : n.getRelationships()) {
+				ids.add(getEdgeId(r));
+				ids.add(getNodeId(r.getOtherNode(n)));
+			}
+		} catch (CacheCreationException e) {
+			// Reported by the write
+		} catch (NotFoundException e) {
+			// Reported by the write
+		}
+
+		return ids.toArray(new String[ids.size()]);
+	}
+
+	/**
+	 * Ids locked by a write to an existing relationship. Removing a node
+	 * removes its relationships, so the nodes of the relationship are locked
+	 * too.
+	 */
+	protected String[] edgeLockIds(String edgeId) {
+		if (batchSize != 1 || batchDelay != 0)
+			return new String[] { edgeId };
+
+		//
+		// An unknown relationship is reported by the write itself.
+		//
+		try {
+			Relationship r = edgeCache.get(edgeId);
+
+			return new String[] { edgeId, getNodeId(r.getStartNode()),
+					getNodeId(r.getEndNode()) };
+		} catch (CacheCreationException e) {
+			return new String[] { edgeId };
+		} catch (NotFoundException e) {
+			return new String[] { edgeId };
+		}
+	}
+
+	/**
+	 * Tell if the current thread is committing a batch. Elements created by
+	 * a batch are shared by its writes before they are committed, writes
+	 * committed on their own do not share anything.
+	 */
+	private boolean batching() {
+		return Thread.holdsLock(pendingWrites);
+	}
+
+	/**
+	 * Get the database node of a GraphStream id, including nodes created by
+	 * the batch being committed.
+	 */
+	protected Node resolveNode(String nodeId) {
+		Node n = batching() ? batchNodes.get(nodeId) : null;
+		return n == null ? getDBNode(nodeId) : n;
+	}
+
+	/**
+	 * Get the database relationship of a GraphStream id, including
+	 * relationships created by the batch being committed.
+	 */
+	protected Relationship resolveEdge(String edgeId) {
+		Relationship r = batching() ? batchEdges.get(edgeId) : null;
+		return r == null ? getDBEdge(edgeId) : r;
+	}
+
+	/**
+	 * Execute a Cypher query. The result is read lazily, while the store may
+	 * be closed or replaced by a fast clear: the query should be executed
+	 * and its result read between {@link #lockStore()} and
+	 * {@link #unlockStore()}.
+	 * 
+	 * @throws DatabaseConnectionException
+	 *             if no database is opened
+	 */
+	public ExecutionResult executeCypher(String req)
+			throws DatabaseConnectionException {
+		lockStore();
+
+		try {
+			return engine.execute(req);
+		} finally {
+			unlockStore();
+		}
+	}
+
+	/**
+	 * Execute a parameterized Cypher query. The execution engine of the
+	 * connection caches the plans of the queries, so a query whose values are
+	 * given as parameters is only parsed once.
+	 * 
+	 * @param req
+	 *            the query, parameters being written {name}
+	 * @param params
+	 *            values of the parameters
+	 * @return the result of the query, read lazily as with
+	 *         {@link #executeCypher(String)}
+	 * @throws DatabaseConnectionException
+	 *             if no database is opened
+	 */
+	public ExecutionResult executeCypher(String req, Map<String, Object> params)
+			throws DatabaseConnectionException {
+		lockStore();
+
+		try {
+			return engine.execute(req, params);
+		} finally {
+			unlockStore();
+		}
+	}
+
+	/**
+	 * Run a Cypher query and send the nodes, relationships and paths it
+	 * returns to the sinks, as if they were read from the store. Rows are
+	 * pulled one at a time from the result, and each one is sent before the
+	 * next is read, so a large result is never held in memory. Collections
+	 * returned by the query are walked too. A relationship is sent after its
+	 * nodes, and elements already sent are not sent again.
+	 * 
+	 * This is only available in lazy mode, where the elements sent are added
+	 * to those held by the sinks: they are not sent again by a later query
+	 * or by {@link #expand(String, int)}, and their changes are forwarded to
+	 * the sinks. Otherwise the sinks already hold the whole store, and every
+	 * element sent would be a duplicate.
+	 * 
+	 * @param query
+	 *            the query, parameters being written {name}
+	 * @param params
+	 *            values of the parameters
+	 * @return the number of elements sent
+	 * @throws DatabaseConnectionException
+	 *             if no database is opened or if the proxy is not in lazy
+	 *             mode
+	 */
+	public long streamCypher(String query, Map<String, Object> params)
+			throws DatabaseConnectionException {
+		lockStore();
+
+		try {
+			Neighbourhood nh = neighbourhood;
+
+			if (nh == null)
+				throw new DatabaseConnectionException(
+						"Cypher results are only streamed in lazy mode");
+
+			Iterator<Map<String, Object>> rows = engine.execute(query,
+					params == null ? Collections.<String, Object> emptyMap()
+							: params).iterator();
+			long sent = 0;
+
+			while (rows.hasNext())
+				for (Object value : rows.next().values())
+					sent += stream(nh, value);
+
+			return sent;
+		} finally {
+			unlockStore();
+		}
+	}
+
+	/**
+	 * Send the elements of a value returned by a query.
+	 */
+	private long stream(Neighbourhood nh, Object value) {
+		long sent = 0;
+
+		if (value instanceof Node) {
+			if (nh.sendNode((Node) value))
+				sent++;
+		} else if (value instanceof Relationship)
+			sent += nh.sendEdge((Relationship) value);
+		else if (value instanceof Path) {
+			Path p = (Path) value;
+
+			for (Node n : p.nodes())
+				if (nh.sendNode(n))
+					sent++;
+
+			for (Relationship r : p.relationships())
+				sent += nh.sendEdge(r);
+		} else if (value instanceof Iterable<?>) {
+			for (Object v : (Iterable<?>) value)
+				sent += stream(nh, v);
+		}
+
+		return sent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.db.DatabaseProxy#connect(java.lang.String,
+	 * org.graphstream.stream.db.DatabaseProxy.Mode)
+	 */
+	public void connect(String dbPath, Mode mode)
+			throws DatabaseConnectionException {
+		if (graphDb != null || bulkLoader != null)
+			throw new DatabaseConnectionException(
+					"A graph database is already opened");
+
+		this.mode = mode;
+
+		registerMetrics();
+
+		if (mode == Mode.BULK_LOAD) {
+			//
+			// The loaded elements would be missing from the change log and
+			// from the history, which can not be rebuilt from the store.
+			//
+			if (new File(dbPath, ChangeLog.DIRECTORY_NAME).exists()
+					|| new File(dbPath, History.DIRECTORY_NAME).exists()) {
+				unregisterMetrics();
+				throw new DatabaseConnectionException(
+						"Can not bulk load a store with a change log or a history");
+			}
+
+			try {
+				bulkLoader = new BulkLoader(dbPath);
+			} catch (RuntimeException e) {
+				unregisterMetrics();
+				throw new DatabaseConnectionException(e);
+			}
+
+			return;
+		}
+
+		graphDb = factory.newEmbeddedDatabase(dbPath);
+		registerDatabase(graphDb);
+
+		engine = new ExecutionEngine(graphDb);
+
+		storeDir = new File(dbPath);
+
+		openIndexes();
+		openDictionaries(storeDir);
+
+		if (changeLogEnabled) {
+			try {
+				changeLog = new ChangeLog(new File(storeDir,
+						ChangeLog.DIRECTORY_NAME), changeLogSegmentSize,
+						changeLogMaxSegments);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		if (historyEnabled) {
+			try {
+				history = new History(new File(storeDir,
+						History.DIRECTORY_NAME), this, keyframeInterval);
+				history.start(graphDb);
+			} catch (IOException e) {
+				e.printStackTrace();
+				closeHistory();
+			}
+		}
+
+		graphDb.registerTransactionEventHandler(this);
+
+		if (mode == Mode.WRITE_ONLY)
+			return;
+
+		if (lazy) {
+			neighbourhood = new Neighbourhood(this);
+
+			if (seeds != null)
+				for (String seed : seeds)
+					expand(seed, 0);
+		} else {
+			boolean replayed;
+
+			try {
+				replayed = replaySnapshot();
+			} catch (DatabaseConnectionException e) {
+				try {
+					disconnect();
+				} catch (DatabaseConnectionException e2) {
+					e2.printStackTrace();
+				}
+
+				throw e;
+			}
+
+			if (!replayed)
+				flushDB();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.db.DatabaseProxy#disconnect()
+	 */
+	public void disconnect() throws DatabaseConnectionException {
+		//
+		// A bulk load ends by closing the batch inserter. The next connection
+		// checks the indexes and rebuilds the id dictionaries of the store.
+		//
+		if (bulkLoader != null) {
+			try {
+				bulkLoader.shutdown();
+			} finally {
+				bulkLoader = null;
+				unregisterMetrics();
+			}
+
+			return;
+		}
+
+		if (graphDb == null)
+			throw new DatabaseConnectionException("No graph database is opened");
+
+		//
+		// The store is closed even if the last batch can not be committed,
+		// the failure is reported once it is.
+		//
+		WriteFailedException failure = null;
+
+		try {
+			flush();
+		} catch (WriteFailedException e) {
+			failure = e;
+		}
+
+		synchronized (pendingWrites) {
+			if (batchTimer != null) {
+				batchTimer.cancel();
+				batchTimer = null;
+			}
+		}
+
+		//
+		// A write-only connection never replays the snapshot.
+		//
+		if (snapshots && mode != Mode.WRITE_ONLY
+				&& !Snapshot.isValid(new File(storeDir, Snapshot.FILE_NAME),
+						getLastTxId())) {
+			try {
+				exportSnapshot();
+			} catch (DatabaseConnectionException e) {
+				e.printStackTrace();
+			}
+		}
+
+		storeLock.writeLock().lock();
+
+		try {
+			graphDb.unregisterTransactionEventHandler(this);
+			closeDictionaries(true);
+			closeChangeLog();
+			closeHistory();
+
+			graphDb.shutdown();
+			unregisterDatabase(graphDb);
+
+			graphDb = null;
+			engine = null;
+			nodeIndex = null;
+			edgeIndex = null;
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+
+		//
+		// The events of the last commits do not need the store anymore.
+		//
+		if (dispatcher != null) {
+			try {
+				dispatcher.drain();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		unregisterMetrics();
+
+		neighbourhood = null;
+		nodeIds.clear();
+		edgeIds.clear();
+
+		if (failure != null)
+			throw new DatabaseConnectionException(failure);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.neo4j.graphdb.event.TransactionEventHandler#afterCommit(org.neo4j
+	 * .graphdb.event.TransactionData, java.lang.Object)
+	 */
+	public void afterCommit(TransactionData td, Object state) {
+		Delta delta = (Delta) state;
+
+		try {
+			emit(td, delta);
+		} finally {
+			releaseLogOrder(delta);
+		}
+	}
+
+	/**
+	 * Log and dispatch the events of a committed transaction.
+	 */
+	protected void emit(TransactionData td, Delta delta) {
+		long start = System.nanoTime();
+
+		updateIds(td);
+
+		//
+		// Removal events have been created before the commit, while the
+		// removed elements could still be read.
+		//
+		Neighbourhood nh = neighbourhood;
+
+		if (delta == null) {
+			if (mode == Mode.WRITE_ONLY && !logging())
+				return;
+
+			delta = new Delta(mode != Mode.WRITE_ONLY, logging());
+		}
+
+		if (nh != null) {
+			for (Long id : delta.heldEdges)
+				nh.removeEdge(id);
+
+			for (Long id : delta.heldNodes)
+				nh.removeNode(id);
+		}
+
+		if (!delta.wants(true))
+			return;
+
+		AttributeProjection ap = projection;
+
+		addRenameEvents(td, delta, nh, ap);
+
+		//
+		// In lazy mode, new nodes are not held by the sinks. New
+		// relationships are sent only if the sinks hold both their nodes.
+		//
+		for (Node n : td.createdNodes())
+			if (delta.wants(nh == null))
+				delta.add(StoreEvent.nodeAdded(getNodeId(n)), nh == null);
+
+		for (Relationship r : td.createdRelationships()) {
+			boolean held = nh == null || nh.addEdge(r);
+
+			if (!delta.wants(held))
+				continue;
+
+			String src = getNodeId(r.getStartNode());
+			String trg = getNodeId(r.getEndNode());
+
+			delta.add(StoreEvent.edgeAdded(getEdgeId(r), src, trg, false),
+					held);
+		}
+
+		//
+		// Ids are not attributes, and renamed elements have been sent again
+		// with all their attributes. Attributes hidden by the projection are
+		// logged but not sent.
+		//
+		for (PropertyEntry<Node> pe : td.assignedNodeProperties()) {
+			if (pe.key().equals("id")
+					|| delta.renamedNodes.containsKey(pe.entity()))
+				continue;
+
+			boolean held = nh == null || nh.hasNode(pe.entity().getId());
+
+			held = held && ap.accept(pe.entity(), pe.key());
+
+			if (!delta.wants(held))
+				continue;
+
+			delta.add(StoreEvent.nodeAttributeChanged(getNodeId(pe.entity()),
+					pe.key(), pe.previouslyCommitedValue(), pe.value()), held);
+		}
+
+		for (PropertyEntry<Relationship> pe : td
+				.assignedRelationshipProperties()) {
+			if (pe.key().equals("id")
+					|| delta.renamedEdges.containsKey(pe.entity()))
+				continue;
+
+			boolean held = nh == null || nh.hasEdge(pe.entity().getId());
+
+			held = held && ap.accept(pe.entity(), pe.key());
+
+			if (!delta.wants(held))
+				continue;
+
+			delta.add(StoreEvent.edgeAttributeChanged(getEdgeId(pe.entity()),
+					pe.key(), pe.previouslyCommitedValue(), pe.value()), held);
+		}
+
+		for (PropertyEntry<Node> pe : td.removedNodeProperties()) {
+			if (pe.key().equals("id") || td.isDeleted(pe.entity())
+					|| delta.renamedNodes.containsKey(pe.entity()))
+				continue;
+
+			boolean held = nh == null || nh.hasNode(pe.entity().getId());
+
+			held = held && ap.accept(pe.entity(), pe.key());
+
+			if (!delta.wants(held))
+				continue;
+
+			delta.add(StoreEvent.nodeAttributeRemoved(getNodeId(pe.entity()),
+					pe.key()), held);
+		}
+
+		for (PropertyEntry<Relationship> pe : td
+				.removedRelationshipProperties()) {
+			if (pe.key().equals("id") || td.isDeleted(pe.entity())
+					|| delta.renamedEdges.containsKey(pe.entity()))
+				continue;
+
+			boolean held = nh == null || nh.hasEdge(pe.entity().getId());
+
+			held = held && ap.accept(pe.entity(), pe.key());
+
+			if (!delta.wants(held))
+				continue;
+
+			delta.add(StoreEvent.edgeAttributeRemoved(getEdgeId(pe.entity()),
+					pe.key()), held);
+		}
+
+		if (delta.logged != null && delta.logged.size() > 0)
+			log(delta.logged);
+
+		releaseLogOrder(delta);
+
+		if (delta.events != null)
+			dispatch(delta.events);
+
+		metrics.emitTime(System.nanoTime() - start);
+	}
+
+	/**
+	 * Replace the elements whose id has changed by a removal followed by an
+	 * addition under the new id, with all their attributes. Sinks drop the
+	 * edges of a removed node, so the edges of a renamed node are added
+	 * again. Renamed edges are removed first and added last, so that they are
+	 * added between the new nodes.
+	 */
+	protected void addRenameEvents(TransactionData td, Delta delta,
+			Neighbourhood nh, AttributeProjection ap) {
+		if (delta.renamedNodes.size() == 0 && delta.renamedEdges.size() == 0)
+			return;
+
+		for (Map.Entry<Relationship, String[]> e : delta.renamedEdges
+				.entrySet()) {
+			boolean held = nh == null || nh.hasEdge(e.getKey().getId());
+
+			if (delta.wants(held))
+				delta.add(StoreEvent.edgeRemoved(e.getValue()[0]), held);
+		}
+
+		//
+		// All the previous ids are removed before the new ones are added, in
+		// case an element takes the id of another one.
+		//
+		for (Map.Entry<Node, String[]> e : delta.renamedNodes.entrySet()) {
+			boolean held = nh == null || nh.hasNode(e.getKey().getId());
+
+			if (delta.wants(held))
+				delta.add(StoreEvent.nodeRemoved(e.getValue()[0]), held);
+		}
+
+		for (Map.Entry<Node, String[]> e : delta.renamedNodes.entrySet()) {
+			Node n = e.getKey();
+			String nodeId = e.getValue()[1];
+			boolean held = nh == null || nh.hasNode(n.getId());
+
+			if (!delta.wants(held))
+				continue;
+
+			delta.add(StoreEvent.nodeAdded(nodeId), held);
+			addAttributeEvents(delta, n, nodeId, true, held, ap);
+		}
+
+		//
+		// Edges created by the transaction are sent with the other created
+		// elements.
+		//
+		HashSet<Relationship> created = null;
+		HashSet<Relationship> added = new HashSet<Relationship>();
+
+		for (Node n : delta.renamedNodes.keySet()) {
+			for (Relationship r : n.getRelationships()) {
+				boolean held = nh == null || nh.hasEdge(r.getId());
+
+				if (!delta.wants(held) || delta.renamedEdges.containsKey(r)
+						|| !added.add(r))
+					continue;
+
+				if (created == null)
+					created = toSet(td.createdRelationships());
+
+				if (!created.contains(r))
+					addEdgeEvents(delta, r, held, ap);
+			}
+		}
+
+		for (Relationship r : delta.renamedEdges.keySet()) {
+			boolean held = nh == null || nh.hasEdge(r.getId());
+
+			if (delta.wants(held))
+				addEdgeEvents(delta, r, held, ap);
+		}
+	}
+
+	private void addEdgeEvents(Delta delta, Relationship r, boolean held,
+			AttributeProjection ap) {
+		String edgeId = getEdgeId(r);
+
+		delta.add(StoreEvent.edgeAdded(edgeId, getNodeId(r.getStartNode()),
+				getNodeId(r.getEndNode()), false), held);
+
+		addAttributeEvents(delta, r, edgeId, false, held, ap);
+	}
+
+	/**
+	 * Add the attributes of an element sent again. All of them are logged,
+	 * only those passing the projection are sent.
+	 */
+	private void addAttributeEvents(Delta delta, PropertyContainer pc,
+			String id, boolean node, boolean held, AttributeProjection ap) {
+		String[] keys = delta.logged != null ? AttributeProjection.ALL
+				.keys(pc) : ap.keys(pc);
+
+		for (String key : keys) {
+			Object value = pc.getProperty(key);
+			StoreEvent e = node ? StoreEvent.nodeAttributeAdded(id, key, value)
+					: StoreEvent.edgeAttributeAdded(id, key, value);
+
+			delta.add(e, held && (delta.logged == null || ap.accept(pc, key)));
+		}
+	}
+
+	/**
+	 * Tell if the events of the commits are written in the change log or in
+	 * the history.
+	 */
+	private boolean logging() {
+		return changeLog != null || history != null;
+	}
+
+	/**
+	 * Append the events of a commit to the change log and to the history. If
+	 * one of them can not be written, it is closed and the changes are not
+	 * written in it anymore.
+	 */
+	protected void log(LinkedList<StoreEvent> events) {
+		ChangeLog log = changeLog;
+		History h = history;
+
+		if (log != null) {
+			try {
+				log.append(events);
+			} catch (IOException e) {
+				metrics.storageFailed();
+				e.printStackTrace();
+				closeChangeLog();
+			}
+		}
+
+		if (h != null) {
+			try {
+				h.append(events);
+			} catch (IOException e) {
+				metrics.storageFailed();
+				e.printStackTrace();
+				closeHistory();
+			}
+		}
+	}
+
+	/**
+	 * Send the events of a commit to the sinks, either directly or through
+	 * the dispatcher if asynchronous dispatch is enabled.
+	 */
+	protected void dispatch(LinkedList<StoreEvent> events) {
+		EventDispatcher d = dispatcher;
+
+		if (d == null) {
+			synchronized (emission) {
+				for (StoreEvent e : events) {
+					try {
+						send(e);
+					} catch (RuntimeException ex) {
+						metrics.dispatchFailed();
+						ex.printStackTrace();
+					}
+				}
+			}
+		} else {
+			try {
+				d.enqueue(events);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Send an event to the sinks of this proxy.
+	 */
+	void send(StoreEvent e) {
+		metrics.emitted(e.type);
+
+		synchronized (emission) {
+			e.sendTo(this, sourceId);
+			checkSinks();
+		}
+	}
+
+	/**
+	 * Record the failure of a sink, caught by its guard.
+	 */
+	void sinkFailed(RuntimeException e) {
+		synchronized (emission) {
+			if (sinkFailure == null)
+				sinkFailure = e;
+		}
+	}
+
+	/**
+	 * Throw the first failure of a sink during the event just sent. The
+	 * other sinks have received the event.
+	 */
+	private void checkSinks() {
+		RuntimeException e = sinkFailure;
+
+		if (e != null) {
+			sinkFailure = null;
+			throw e;
+		}
+	}
+
+	/*
+	 * Sinks are registered through guards, see SinkGuard.
+	 */
+
+	@Override
+	public void addSink(Sink sink) {
+		addAttributeSink(sink);
+		addElementSink(sink);
+	}
+
+	@Override
+	public void removeSink(Sink sink) {
+		removeAttributeSink(sink);
+		removeElementSink(sink);
+	}
+
+	@Override
+	public void addAttributeSink(AttributeSink sink) {
+		SinkGuard guard;
+
+		synchronized (sinkGuards) {
+			if (attributeGuards.containsKey(sink))
+				return;
+
+			guard = new SinkGuard(this, sink);
+			attributeGuards.put(sink, guard);
+		}
+
+		super.addAttributeSink(guard);
+	}
+
+	@Override
+	public void removeAttributeSink(AttributeSink sink) {
+		SinkGuard guard;
+
+		synchronized (sinkGuards) {
+			guard = attributeGuards.remove(sink);
+		}
+
+		if (guard != null)
+			super.removeAttributeSink(guard);
+	}
+
+	@Override
+	public void addElementSink(ElementSink sink) {
+		SinkGuard guard;
+
+		synchronized (sinkGuards) {
+			if (elementGuards.containsKey(sink))
+				return;
+
+			guard = new SinkGuard(this, sink);
+			elementGuards.put(sink, guard);
+		}
+
+		super.addElementSink(guard);
+	}
+
+	@Override
+	public void removeElementSink(ElementSink sink) {
+		SinkGuard guard;
+
+		synchronized (sinkGuards) {
+			guard = elementGuards.remove(sink);
+		}
+
+		if (guard != null)
+			super.removeElementSink(guard);
+	}
+
+	@Override
+	public void clearSinks() {
+		synchronized (sinkGuards) {
+			attributeGuards.clear();
+			elementGuards.clear();
+		}
+
+		super.clearSinks();
+	}
+
+	/**
+	 * Send the events produced by the commits from a dedicated thread. The
+	 * events are held in a queue of the given capacity, the policy defining
+	 * what happens when the queue is full. Asynchronous dispatch can be
+	 * disabled by passing a null policy, in which case the pending events
+	 * are sent before this method returns.
+	 * 
+	 * @param capacity
+	 *            maximum number of events in the queue
+	 * @param policy
+	 *            policy used when the queue is full, or null to send events
+	 *            from the committing thread
+	 */
+	public void setAsyncDispatch(int capacity,
+			EventDispatcher.OverflowPolicy policy) {
+		EventDispatcher old = dispatcher;
+
+		dispatcher = policy == null ? null : new EventDispatcher(this,
+				capacity, policy);
+
+		if (old != null) {
+			try {
+				old.shutdown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Get the dispatcher sending the events of the commits, which reports
+	 * the depth and the lag of its queue.
+	 * 
+	 * @return the dispatcher, or null if events are sent from the committing
+	 *         thread
+	 */
+	public EventDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.neo4j.graphdb.event.TransactionEventHandler#afterRollback(org.neo4j
+	 * .graphdb.event.TransactionData, java.lang.Object)
+	 */
+	public void afterRollback(TransactionData td, Object state) {
+		Delta delta = (Delta) state;
+
+		releaseLogOrder(delta);
+
+		//
+		// Cached elements have been moved to their new id before the commit,
+		// they are just dropped.
+		//
+		if (delta != null) {
+			for (String[] ids : delta.renamedNodes.values()) {
+				nodeCache.revokeKey(ids[0]);
+				nodeCache.revokeKey(ids[1]);
+			}
+
+			for (String[] ids : delta.renamedEdges.values()) {
+				edgeCache.revokeKey(ids[0]);
+				edgeCache.revokeKey(ids[1]);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.neo4j.graphdb.event.TransactionEventHandler#beforeCommit(org.neo4j
+	 * .graphdb.event.TransactionData)
+	 */
+	public Object beforeCommit(TransactionData td) throws Exception {
+		//
+		// Properties of deleted elements can not be read anymore, so ids are
+		// taken from the removed properties of the transaction.
+		//
+		HashMap<Long, String> deletedNodeIds = new HashMap<Long, String>();
+		HashMap<Long, String> deletedEdgeIds = new HashMap<Long, String>();
+
+		for (PropertyEntry<Node> pe : td.removedNodeProperties())
+			if (pe.key().equals("id"))
+				deletedNodeIds.put(pe.entity().getId(), pe
+						.previouslyCommitedValue().toString());
+
+		for (PropertyEntry<Relationship> pe : td
+				.removedRelationshipProperties())
+			if (pe.key().equals("id"))
+				deletedEdgeIds.put(pe.entity().getId(), pe
+						.previouslyCommitedValue().toString());
+
+		ArrayList<String> revoked = new ArrayList<String>();
+
+		for (Node n : td.deletedNodes()) {
+			revoked.add(getDeletedId(deletedNodeIds, n.getId()));
+			nodeIndex.remove(n);
+		}
+
+		nodeCache.revokeKeys(revoked);
+		revoked.clear();
+
+		for (Relationship r : td.deletedRelationships()) {
+			revoked.add(getDeletedId(deletedEdgeIds, r.getId()));
+			edgeIndex.remove(r);
+		}
+
+		edgeCache.revokeKeys(revoked);
+
+		LinkedHashMap<Node, String[]> renamedNodes = getRenamedNodes(td);
+		LinkedHashMap<Relationship, String[]> renamedEdges = getRenamedEdges(td);
+
+		for (Map.Entry<Node, String[]> e : renamedNodes.entrySet()) {
+			nodeIndex.remove(e.getKey(), "id");
+
+			if (e.getKey().hasProperty("id"))
+				nodeIndex.add(e.getKey(), "id", e.getValue()[1]);
+		}
+
+		for (Map.Entry<Relationship, String[]> e : renamedEdges.entrySet()) {
+			edgeIndex.remove(e.getKey(), "id");
+
+			if (e.getKey().hasProperty("id"))
+				edgeIndex.add(e.getKey(), "id", e.getValue()[1]);
+		}
+
+		rekey(nodeCache, renamedNodes);
+		rekey(edgeCache, renamedEdges);
+
+		//
+		// Removal events are sent after the commit, with the other events of
+		// the transaction. The renamed elements are kept to produce their
+		// events, and to drop them from the caches if the commit fails.
+		//
+		Delta delta = new Delta(mode != Mode.WRITE_ONLY, logging());
+		Neighbourhood nh = neighbourhood;
+
+		if (renamedNodes.size() > 0)
+			delta.renamedNodes = renamedNodes;
+
+		if (renamedEdges.size() > 0)
+			delta.renamedEdges = renamedEdges;
+
+		//
+		// The neighbourhood is left as it is until the transaction is
+		// committed, it could still be rolled back.
+		//
+		if (nh != null) {
+			delta.heldNodes = new HashSet<Long>();
+			delta.heldEdges = new HashSet<Long>();
+
+			for (Relationship r : td.deletedRelationships())
+				if (nh.hasEdge(r.getId()))
+					delta.heldEdges.add(r.getId());
+
+			for (Node n : td.deletedNodes())
+				if (nh.hasNode(n.getId()))
+					delta.heldNodes.add(n.getId());
+		}
+
+		if (!delta.wants(true))
+			return delta;
+
+		//
+		// The step begins before the writes it is committed with.
+		//
+		Double step = committingStep.get();
+
+		if (step != null)
+			delta.add(StoreEvent.stepBegins(step), true);
+
+		for (Relationship r : td.deletedRelationships()) {
+			boolean held = nh == null || delta.heldEdges.contains(r.getId());
+
+			if (delta.wants(held))
+				delta.add(StoreEvent.edgeRemoved(getDeletedId(deletedEdgeIds,
+						r.getId())), held);
+		}
+
+		for (Node n : td.deletedNodes()) {
+			boolean held = nh == null || delta.heldNodes.contains(n.getId());
+
+			if (delta.wants(held))
+				delta.add(StoreEvent.nodeRemoved(getDeletedId(deletedNodeIds,
+						n.getId())), held);
+		}
+
+		//
+		// Taken last, once nothing can fail anymore before the commit.
+		//
+		if (delta.logged != null) {
+			logOrder.lock();
+			delta.ordered = true;
+		}
+
+		return delta;
+	}
+
+	/**
+	 * Let the next commit be logged, if the transaction of a delta holds the
+	 * log order.
+	 */
+	private void releaseLogOrder(Delta delta) {
+		if (delta != null && delta.ordered) {
+			delta.ordered = false;
+			logOrder.unlock();
+		}
+	}
+
+	/**
+	 * Update the reverse id maps with the changes of a committed transaction.
+	 * The database id of a deleted element can be given to a new one, so
+	 * entries of created elements are dropped before the assigned ids are
+	 * recorded.
+	 */
+	protected void updateIds(TransactionData td) {
+		for (Node n : td.createdNodes())
+			forgetNodeId(n.getId());
+
+		for (Relationship r : td.createdRelationships())
+			forgetEdgeId(r.getId());
+
+		for (Node n : td.deletedNodes())
+			forgetNodeId(n.getId());
+
+		for (Relationship r : td.deletedRelationships())
+			forgetEdgeId(r.getId());
+
+		for (PropertyEntry<Node> pe : td.removedNodeProperties())
+			if (pe.key().equals("id"))
+				forgetNodeId(pe.entity().getId());
+
+		for (PropertyEntry<Relationship> pe : td
+				.removedRelationshipProperties())
+			if (pe.key().equals("id"))
+				forgetEdgeId(pe.entity().getId());
+
+		for (PropertyEntry<Node> pe : td.assignedNodeProperties())
+			if (pe.key().equals("id") && !td.isDeleted(pe.entity()))
+				recordNodeId(pe.entity().getId(), pe.value().toString());
+
+		for (PropertyEntry<Relationship> pe : td
+				.assignedRelationshipProperties())
+			if (pe.key().equals("id") && !td.isDeleted(pe.entity()))
+				recordEdgeId(pe.entity().getId(), pe.value().toString());
+
+		IdDictionary nd = nodeDictionary;
+		IdDictionary ed = edgeDictionary;
+
+		if (nd != null && ed != null) {
+			long tx = getLastTxId();
+
+			nd.commit(tx);
+			ed.commit(tx);
+		}
+	}
+
+	private void forgetNodeId(long dbId) {
+		IdDictionary d = nodeDictionary;
+
+		nodeIds.remove(dbId);
+
+		if (d != null)
+			d.remove(dbId);
+	}
+
+	private void forgetEdgeId(long dbId) {
+		IdDictionary d = edgeDictionary;
+
+		edgeIds.remove(dbId);
+
+		if (d != null)
+			d.remove(dbId);
+	}
+
+	private void recordNodeId(long dbId, String id) {
+		nodeIds.put(dbId, id);
+		record(nodeDictionary, dbId, id);
+	}
+
+	private void recordEdgeId(long dbId, String id) {
+		edgeIds.put(dbId, id);
+		record(edgeDictionary, dbId, id);
+	}
+
+	/**
+	 * Write an id in a dictionary. A dictionary which can not be written, or
+	 * which is full, is closed: ids are then resolved through the indexes,
+	 * and the dictionaries are rebuilt the next time the store is opened.
+	 */
+	private void record(IdDictionary d, long dbId, String id) {
+		if (d == null)
+			return;
+
+		try {
+			d.put(dbId, id);
+		} catch (IOException e) {
+			dictionaryFailed(e);
+		} catch (IllegalStateException e) {
+			dictionaryFailed(e);
+		}
+	}
+
+	private void dictionaryFailed(Exception e) {
+		metrics.storageFailed();
+		e.printStackTrace();
+		closeDictionaries(false);
+	}
+
+	/**
+	 * Id of the last transaction committed in the store.
+	 */
+	protected long getLastTxId() {
+		return ((GraphDatabaseAPI) graphDb).getXaDataSourceManager()
+				.getNeoStoreDataSource().getLastCommittedTxId();
+	}
+
+	/**
+	 * Open the id dictionaries kept in the store directory, and rebuild them
+	 * from the store if they are not up to date with it. If the dictionaries
+	 * can not be used, ids are resolved through the store and the indexes
+	 * only.
+	 */
+	protected void openDictionaries(File dir) {
+		try {
+			nodeDictionary = new IdDictionary(dir, NODE_DICTIONARY);
+			edgeDictionary = new IdDictionary(dir, EDGE_DICTIONARY);
+
+			long tx = getLastTxId();
+
+			if (!nodeDictionary.isValid(tx) || !edgeDictionary.isValid(tx))
+				buildDictionaries(tx);
+		} catch (IOException e) {
+			e.printStackTrace();
+			closeDictionaries(false);
+		} catch (IllegalStateException e) {
+			e.printStackTrace();
+			closeDictionaries(false);
+		}
+	}
+
+	/**
+	 * Fill the id dictionaries with the ids of all the elements of the store.
+	 */
+	protected void buildDictionaries(long tx) throws IOException {
+		GlobalGraphOperations ops = GlobalGraphOperations.at(graphDb);
+
+		nodeDictionary.reset();
+		edgeDictionary.reset();
+
+		for (Node n : ops.getAllNodes())
+			if (n.hasProperty("id"))
+				nodeDictionary.put(n.getId(), n.getProperty("id").toString());
+
+		for (Relationship r : ops.getAllRelationships())
+			if (r.hasProperty("id"))
+				edgeDictionary.put(r.getId(), r.getProperty("id").toString());
+
+		nodeDictionary.commit(tx);
+		edgeDictionary.commit(tx);
+	}
+
+	/**
+	 * Close the id dictionaries. Dictionaries which are not closed cleanly
+	 * are rebuilt the next time the store is opened.
+	 */
+	protected synchronized void closeDictionaries(boolean clean) {
+		IdDictionary nd = nodeDictionary;
+		IdDictionary ed = edgeDictionary;
+
+		nodeDictionary = null;
+		edgeDictionary = null;
+
+		for (IdDictionary d : new IdDictionary[] { nd, ed }) {
+			if (d != null) {
+				try {
+					d.close(clean);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Value of the id property of an element, or null if it has none.
+	 */
+	private static String idOf(PropertyContainer pc) {
+		Object id = pc.getProperty("id", null);
+		return id == null ? null : id.toString();
+	}
+
+	private static String getDeletedId(HashMap<Long, String> ids, long dbId) {
+		String id = ids.get(dbId);
+		return id == null ? Long.toString(dbId) : id;
+	}
+
+	/**
+	 * Collect the nodes of a transaction whose GraphStream id has changed,
+	 * with their previous and new ids. The id given to a created node is not
+	 * a change. A node without id property is identified by its database id.
+	 */
+	protected static LinkedHashMap<Node, String[]> getRenamedNodes(
+			TransactionData td) {
+		LinkedHashMap<Node, String[]> renamed = new LinkedHashMap<Node, String[]>();
+		HashSet<Node> created = null;
+
+		for (PropertyEntry<Node> pe : td.assignedNodeProperties()) {
+			Node n = pe.entity();
+			Object previous = pe.previouslyCommitedValue();
+
+			if (!pe.key().equals("id") || td.isDeleted(n))
+				continue;
+
+			if (previous == null) {
+				if (created == null)
+					created = toSet(td.createdNodes());
+
+				if (created.contains(n))
+					continue;
+			}
+
+			String oldId = previous == null ? Long.toString(n.getId())
+					: previous.toString();
+			String newId = pe.value().toString();
+
+			if (!oldId.equals(newId))
+				renamed.put(n, new String[] { oldId, newId });
+		}
+
+		//
+		// A removed id without committed value was given to a node created
+		// by the transaction.
+		//
+		for (PropertyEntry<Node> pe : td.removedNodeProperties()) {
+			Node n = pe.entity();
+			Object previous = pe.previouslyCommitedValue();
+
+			if (pe.key().equals("id") && previous != null && !td.isDeleted(n))
+				renamed.put(n,
+						new String[] { previous.toString(),
+								Long.toString(n.getId()) });
+		}
+
+		return renamed;
+	}
+
+	/**
+	 * Collect the relationships of a transaction whose GraphStream id has
+	 * changed, with their previous and new ids.
+	 * 
+	 * @see #getRenamedNodes(TransactionData)
+	 */
+	protected static LinkedHashMap<Relationship, String[]> getRenamedEdges(
+			TransactionData td) {
+		LinkedHashMap<Relationship, String[]> renamed = new LinkedHashMap<Relationship, String[]>();
+		HashSet<Relationship> created = null;
+
+		for (PropertyEntry<Relationship> pe : td
+				.assignedRelationshipProperties()) {
+			Relationship r = pe.entity();
+			Object previous = pe.previouslyCommitedValue();
+
+			if (!pe.key().equals("id") || td.isDeleted(r))
+				continue;
+
+			if (previous == null) {
+				if (created == null)
+					created = toSet(td.createdRelationships());
+
+				if (created.contains(r))
+					continue;
+			}
+
+			String oldId = previous == null ? Long.toString(r.getId())
+					: previous.toString();
+			String newId = pe.value().toString();
+
+			if (!oldId.equals(newId))
+				renamed.put(r, new String[] { oldId, newId });
+		}
+
+		for (PropertyEntry<Relationship> pe : td
+				.removedRelationshipProperties()) {
+			Relationship r = pe.entity();
+			Object previous = pe.previouslyCommitedValue();
+
+			if (pe.key().equals("id") && previous != null && !td.isDeleted(r))
+				renamed.put(r,
+						new String[] { previous.toString(),
+								Long.toString(r.getId()) });
+		}
+
+		return renamed;
+	}
+
+	/**
+	 * Move cached elements to their new id. When an element takes the id
+	 * another element has left in the same transaction, moving the entries
+	 * one by one could drop the wrong element, so all the ids involved are
+	 * revoked instead.
+	 */
+	private static <T> void rekey(Cache<String, T> cache,
+			Map<T, String[]> renamed) {
+		if (renamed.size() == 0)
+			return;
+
+		HashSet<String> oldIds = new HashSet<String>();
+		boolean conflict = false;
+
+		for (String[] ids : renamed.values())
+			oldIds.add(ids[0]);
+
+		for (String[] ids : renamed.values())
+			conflict |= oldIds.contains(ids[1]);
+
+		for (String[] ids : renamed.values()) {
+			if (conflict) {
+				cache.revokeKey(ids[0]);
+				cache.revokeKey(ids[1]);
+			} else
+				cache.rekey(ids[0], ids[1]);
+		}
+	}
+
+	private static <T> HashSet<T> toSet(Iterable<T> elements) {
+		HashSet<T> set = new HashSet<T>();
+
+		for (T e : elements)
+			set.add(e);
+
+		return set;
+	}
+
+	/**
+	 * Tell if an event received from a source has not been seen yet. The
+	 * proxy can be fed by several sources from different threads, so the
+	 * shared sink time is protected.
+	 */
+	protected boolean isNewEvent(String sourceId, long timeId) {
+		synchronized (sinkTime) {
+			return sinkTime.isNewEvent(sourceId, timeId);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String
+	 * , long, java.lang.String, java.lang.Object)
+	 */
+	public void graphAttributeAdded(String sourceId, long timeId,
+			String attribute, Object value) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.
+	 * String, long, java.lang.String, java.lang.Object, java.lang.Object)
+	 */
+	public void graphAttributeChanged(String sourceId, long timeId,
+			String attribute, Object oldValue, Object newValue) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.
+	 * String, long, java.lang.String)
+	 */
+	public void graphAttributeRemoved(String sourceId, long timeId,
+			String attribute) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String,
+	 * long, java.lang.String, java.lang.String, java.lang.Object)
+	 */
+	public void nodeAttributeAdded(String sourceId, long timeId,
+			final String nodeId, final String attribute, final Object value) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.nodeAttributeChanged(nodeId, attribute, value);
+			return;
+		}
+
+		willResolve(batchNodeIds, batchCreatedNodeIds, nodeId);
+
+		write(new WriteOperation() {
+			public void apply() {
+				resolveNode(nodeId).setProperty(attribute, value);
+			}
+		}, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String
+	 * , long, java.lang.String, java.lang.String, java.lang.Object,
+	 * java.lang.Object)
+	 */
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			final String nodeId, final String attribute, Object oldValue,
+			final Object newValue) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.nodeAttributeChanged(nodeId, attribute, newValue);
+			return;
+		}
+
+		willResolve(batchNodeIds, batchCreatedNodeIds, nodeId);
+
+		write(new WriteOperation() {
+			public void apply() {
+				resolveNode(nodeId).setProperty(attribute, newValue);
+			}
+		}, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String
+	 * , long, java.lang.String, java.lang.String)
+	 */
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			final String nodeId, final String attribute) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.nodeAttributeRemoved(nodeId, attribute);
+			return;
+		}
+
+		willResolve(batchNodeIds, batchCreatedNodeIds, nodeId);
+
+		write(new WriteOperation() {
+			public void apply() {
+				resolveNode(nodeId).removeProperty(attribute);
+			}
+		}, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String,
+	 * long, java.lang.String, java.lang.String, java.lang.Object)
+	 */
+	public void edgeAttributeAdded(String sourceId, long timeId,
+			final String edgeId, final String attribute, final Object value) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.edgeAttributeChanged(edgeId, attribute, value);
+			return;
+		}
+
+		willResolve(batchEdgeIds, batchCreatedEdgeIds, edgeId);
+
+		writeEdge(new WriteOperation() {
+			public void apply() {
+				resolveEdge(edgeId).setProperty(attribute, value);
+			}
+		}, edgeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String
+	 * , long, java.lang.String, java.lang.String, java.lang.Object,
+	 * java.lang.Object)
+	 */
+	public void edgeAttributeChanged(String sourceId, long timeId,
+			final String edgeId, final String attribute, Object oldValue,
+			final Object newValue) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.edgeAttributeChanged(edgeId, attribute, newValue);
+			return;
+		}
+
+		willResolve(batchEdgeIds, batchCreatedEdgeIds, edgeId);
+
+		writeEdge(new WriteOperation() {
+			public void apply() {
+				resolveEdge(edgeId).setProperty(attribute, newValue);
+			}
+		}, edgeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String
+	 * , long, java.lang.String, java.lang.String)
+	 */
+	public void edgeAttributeRemoved(String sourceId, long timeId,
+			final String edgeId, final String attribute) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.edgeAttributeRemoved(edgeId, attribute);
+			return;
+		}
+
+		willResolve(batchEdgeIds, batchCreatedEdgeIds, edgeId);
+
+		writeEdge(new WriteOperation() {
+			public void apply() {
+				resolveEdge(edgeId).removeProperty(attribute);
+			}
+		}, edgeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
+	 * java.lang.String)
+	 */
+	public void nodeAdded(String sourceId, long timeId, final String nodeId) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.nodeAdded(nodeId);
+			return;
+		}
+
+		willCreate(batchNodeIds, batchCreatedNodeIds, nodeId);
+
+		write(new WriteOperation() {
+			public void apply() {
+				Node n = graphDb.createNode();
+				n.setProperty("id", nodeId);
+				nodeIndex.add(n, "id", nodeId);
+
+				if (batching())
+					batchNodes.put(nodeId, n);
+			}
+		}, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public void nodeRemoved(String sourceId, long timeId, final String nodeId) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.unsupported("nodeRemoved");
+			return;
+		}
+
+		detachRelationships(nodeId);
+
+		writeNode(new WriteOperation() {
+			public void apply() {
+				Node n = resolveNode(nodeId);
+
+				if (n == null) {
+					System.err.printf("unknown node '%s'\n", nodeId);
+					return;
+				}
+
+				if (batching())
+					batchNodes.remove(nodeId);
+
+				//
+				// Relationships are collected first, they can not be deleted
+				// while the node is iterated.
+				//
+				ArrayList<Relationship> relationships = new ArrayList<Relationship>();
+
+				for (Relationship r : n.getRelationships())
+					relationships.add(r);
+
+				for (Relationship r : relationships)
+					r.delete();
+
+				n.delete();
+			}
+		}, nodeId);
+	}
+
+	/**
+	 * Delete the relationships of a node which has more than
+	 * {@link #DELETE_CHUNK} of them, chunk by chunk, each chunk in its own
+	 * transaction. The removal of the node then deletes the last chunk with
+	 * the node, so a node of low degree is still removed in a single
+	 * transaction. Only the node is locked while a chunk is deleted, since
+	 * writes to its relationships lock it too. With group commit, the writes
+	 * already buffered are committed before the first chunk, so that the
+	 * events of the chunks follow theirs. With step commit, nothing is
+	 * detached: the node and all its relationships are deleted in the
+	 * transaction of the step.
+	 */
+	protected void detachRelationships(final String nodeId) {
+		Node n;
+
+		if (graphDb == null || stepCommit)
+			return;
+
+		//
+		// A node created by a pending batch has no committed relationship.
+		//
+		try {
+			n = nodeCache.get(nodeId);
+		} catch (CacheCreationException e) {
+			return;
+		}
+
+		for (;;) {
+			final ArrayList<Relationship> chunk = new ArrayList<Relationship>();
+			boolean more = false;
+
+			try {
+				for (Relationship r : n.getRelationships()) {
+					if (chunk.size() == DELETE_CHUNK) {
+						more = true;
+						break;
+					}
+
+					chunk.add(r);
+				}
+			} catch (NotFoundException e) {
+				// Reported by the write
+				return;
+			}
+
+			if (!more)
+				return;
+
+			List<WriteOperation> ops = Collections
+					.<WriteOperation> singletonList(new WriteOperation() {
+						public void apply() {
+							for (Relationship r : chunk)
+								r.delete();
+						}
+					});
+
+			if (batchSize == 1 && batchDelay == 0) {
+				writeLocks.lock(nodeId);
+
+				try {
+					commitWithRetries(ops);
+				} finally {
+					writeLocks.unlock(nodeId);
+				}
+			} else {
+				synchronized (pendingWrites) {
+					flush();
+					commitWithRetries(ops);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long,
+	 * java.lang.String, java.lang.String, java.lang.String, boolean)
+	 */
+	public void edgeAdded(String sourceId, long timeId, final String edgeId,
+			final String fromNodeId, final String toNodeId,
+			final boolean directed) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.edgeAdded(edgeId, fromNodeId, toNodeId, directed);
+			return;
+		}
+
+		willResolve(batchNodeIds, batchCreatedNodeIds, fromNodeId, toNodeId);
+		willCreate(batchEdgeIds, batchCreatedEdgeIds, edgeId);
+
+		write(new WriteOperation() {
+			public void apply() {
+				Node src = resolveNode(fromNodeId);
+				Node trg = resolveNode(toNodeId);
+
+				Relationship r = src.createRelationshipTo(trg,
+						directed ? Neo4JRelationshipType.DIRECTED
+								: Neo4JRelationshipType.UNDIRECTED);
+				r.setProperty("id", edgeId);
+				edgeIndex.add(r, "id", edgeId);
+
+				if (batching())
+					batchEdges.put(edgeId, r);
+			}
+		}, edgeId, fromNodeId, toNodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public void edgeRemoved(String sourceId, long timeId, final String edgeId) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.unsupported("edgeRemoved");
+			return;
+		}
+
+		willResolve(batchEdgeIds, batchCreatedEdgeIds, edgeId);
+
+		writeEdge(new WriteOperation() {
+			public void apply() {
+				resolveEdge(edgeId).delete();
+				if (batching())
+					batchEdges.remove(edgeId);
+			}
+		}, edgeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+	 * long)
+	 */
+	public void graphCleared(String sourceId, long timeId) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		if (mode == Mode.BULK_LOAD) {
+			bulkLoader.unsupported("graphCleared");
+			return;
+		}
+
+		//
+		// The whole graph is written, so no other write is committed
+		// meanwhile. Writes buffered before the clear are committed first.
+		//
+		if (batchSize == 1 && batchDelay == 0) {
+			writeLocks.lockAll();
+
+			try {
+				clearStore();
+			} finally {
+				writeLocks.unlockAll();
+			}
+		} else {
+			synchronized (pendingWrites) {
+				flush();
+				clearStore();
+			}
+		}
+	}
+
+	/**
+	 * Replace the store by an empty one when the graph is cleared, instead
+	 * of deleting its elements. The database is shut down, its store files
+	 * are deleted, and an empty store is opened in the same directory. This
+	 * takes the same time whatever the size of the store, but the sinks and
+	 * the change log get a single graph cleared event instead of the removal
+	 * of each element, and results of queries run before the clear can not
+	 * be read anymore.
+	 * 
+	 * @param enabled
+	 *            true to replace the store, false to delete the elements
+	 */
+	public void setFastClear(boolean enabled) {
+		this.fastClear = enabled;
+	}
+
+	/**
+	 * Delete all the elements of the store. Relationships are deleted first,
+	 * then nodes, in transactions of at most {@link #DELETE_CHUNK} elements,
+	 * so that large stores can be cleared without exhausting the memory.
+	 * Elements are read with a single pass over the store.
+	 */
+	protected void clearStore() {
+		if (graphDb == null)
+			return;
+
+		if (fastClear) {
+			resetStore();
+			return;
+		}
+
+		GlobalGraphOperations ops = GlobalGraphOperations.at(graphDb);
+
+		deleteAll(ops.getAllRelationships().iterator());
+		deleteAll(ops.getAllNodes().iterator());
+
+		nodeCache.clear();
+		edgeCache.clear();
+	}
+
+	private <T extends PropertyContainer> void deleteAll(Iterator<T> elements) {
+		while (elements.hasNext()) {
+			final ArrayList<T> chunk = new ArrayList<T>();
+
+			while (elements.hasNext() && chunk.size() < DELETE_CHUNK)
+				chunk.add(elements.next());
+
+			commitWithRetries(Collections
+					.<WriteOperation> singletonList(new WriteOperation() {
+						public void apply() {
+							for (T e : chunk) {
+								if (e instanceof Node)
+									((Node) e).delete();
+								else
+									((Relationship) e).delete();
+							}
+						}
+					}));
+		}
+	}
+
+	/**
+	 * Shut the database down, delete its store and open an empty one. The
+	 * change log, the history and the step of the store are kept. Reads of
+	 * the store running meanwhile are waited for, and those starting
+	 * meanwhile wait for the new store.
+	 */
+	protected void resetStore() {
+		storeLock.writeLock().lock();
+
+		try {
+			Object step = getGraphProperties().getProperty(STEP_KEY, null);
+
+			graphDb.unregisterTransactionEventHandler(this);
+			closeDictionaries(false);
+
+			graphDb.shutdown();
+			unregisterDatabase(graphDb);
+
+			deleteStore(storeDir);
+
+			graphDb = factory.newEmbeddedDatabase(storeDir.getPath());
+			registerDatabase(graphDb);
+
+			engine = new ExecutionEngine(graphDb);
+
+			nodeIds.clear();
+			edgeIds.clear();
+			nodeCache.clear();
+			edgeCache.clear();
+
+			openIndexes();
+			openDictionaries(storeDir);
+
+			if (step != null) {
+				Transaction tx = graphDb.beginTx();
+
+				try {
+					getGraphProperties().setProperty(STEP_KEY, step);
+					tx.success();
+				} finally {
+					tx.finish();
+				}
+			}
+
+			if (neighbourhood != null)
+				neighbourhood = new Neighbourhood(this);
+
+			graphDb.registerTransactionEventHandler(this);
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+
+		LinkedList<StoreEvent> events = new LinkedList<StoreEvent>();
+		events.add(StoreEvent.graphCleared());
+
+		log(events);
+
+		if (mode != Mode.WRITE_ONLY)
+			dispatch(events);
+	}
+
+	/**
+	 * Delete the files of a store, except the change log and the history.
+	 */
+	private static void deleteStore(File dir) {
+		File[] files = dir.listFiles();
+
+		if (files == null)
+			return;
+
+		for (File f : files) {
+			if (f.getName().equals(ChangeLog.DIRECTORY_NAME)
+					|| f.getName().equals(History.DIRECTORY_NAME))
+				continue;
+
+			deleteRecursively(f);
+		}
+	}
+
+	private static void deleteRecursively(File f) {
+		File[] files = f.listFiles();
+
+		if (files != null)
+			for (File child : files)
+				deleteRecursively(child);
+
+		f.delete();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+	 * long, double)
+	 */
+	public void stepBegins(String sourceId, long timeId, final double step) {
+		if (mode == Mode.READ_ONLY || !isNewEvent(sourceId, timeId))
+			return;
+
+		//
+		// The batch inserter has no transactions to delimit steps.
+		//
+		if (mode == Mode.BULK_LOAD)
+			return;
+
+		//
+		// Without step commit, a step is a transaction of its own which
+		// locks every write; it is only recorded if it is logged.
+		//
+		if (!stepCommit && !logging())
+			return;
+
+		//
+		// The writes of the previous step are committed before the new step
+		// is recorded, the new step opens the next batch. Otherwise a batch
+		// holding the step would be logged as a whole in the new step, and a
+		// second step in the same batch would be lost.
+		//
+		flush();
+
+		write(new WriteOperation() {
+			public void apply() {
+				getGraphProperties().setProperty(STEP_KEY, step);
+				committingStep.set(step);
+			}
+		});
+	}
+
+	/**
+	 * The events of a commit: those sent to the sinks, and those written in
+	 * the change log. In lazy mode, the log gets all the events while the
+	 * sinks only get the events of the elements they hold.
+	 */
+	protected static class Delta {
+		final LinkedList<StoreEvent> events;
+		final LinkedList<StoreEvent> logged;
+
+		/**
+		 * Elements whose id has changed, with their previous and new ids.
+		 */
+		Map<Node, String[]> renamedNodes = Collections.emptyMap();
+		Map<Relationship, String[]> renamedEdges = Collections.emptyMap();
+
+		/**
+		 * Database ids of the deleted elements held by the lazy
+		 * neighbourhood. They are dropped from it once the transaction is
+		 * committed.
+		 */
+		Set<Long> heldNodes = Collections.emptySet();
+		Set<Long> heldEdges = Collections.emptySet();
+
+		/**
+		 * True while the transaction holds {@link Neo4JProxy#logOrder}.
+		 */
+		boolean ordered = false;
+
+		Delta(boolean dispatched, boolean logged) {
+			this.events = dispatched ? new LinkedList<StoreEvent>() : null;
+			this.logged = logged ? new LinkedList<StoreEvent>() : null;
+		}
+
+		/**
+		 * Tell if an event has to be created.
+		 * 
+		 * @param held
+		 *            true if the sinks hold the element of the event
+		 */
+		boolean wants(boolean held) {
+			return logged != null || (held && events != null);
+		}
+
+		void add(StoreEvent e, boolean held) {
+			if (logged != null)
+				logged.add(e);
+
+			if (held && events != null)
+				events.add(e);
+		}
+	}
+
+	/**
+	 * A write produced by a sink event. Writes are applied by
+	 * {@link Neo4JProxy#flush()} inside the transaction of their batch.
+	 */
+	protected static interface WriteOperation {
+		void apply();
+	}
+
+	private class NodeCache extends Cache<String, Node> {
+		public NodeCache(int capacity) {
+			super(capacity);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.neo4j.tools.Cache#createObject(java.lang.Object)
+		 */
+		protected Node createObject(String key) throws CacheCreationException {
+			Node n = byDictionary(key);
+
+			if (n == null)
+				n = first(nodeIndex.get("id", key));
+
+			if (n == null)
+				n = byInternalId(key);
+
+			if (n == null)
+				throw new CacheCreationException("Node '%s' not found", key);
+
+			return n;
+		}
+
+		/**
+		 * Resolve the keys known by the dictionary, then all the others with
+		 * a single query of the id index.
+		 * 
+		 * @see org.graphstream.neo4j.tools.Cache#createObjects(java.util.Collection)
+		 */
+		protected Map<String, Node> createObjects(Collection<String> keys) {
+			HashMap<String, Node> nodes = new HashMap<String, Node>();
+			ArrayList<String> unknown = new ArrayList<String>();
+
+			for (String key : keys) {
+				Node n = byDictionary(key);
+
+				if (n == null)
+					unknown.add(key);
+				else
+					nodes.put(key, n);
+			}
+
+			queryIds(nodeIndex, unknown, nodes);
+
+			for (String key : unknown) {
+				if (!nodes.containsKey(key)) {
+					Node n = byInternalId(key);
+
+					if (n != null)
+						nodes.put(key, n);
+				}
+			}
+
+			return nodes;
+		}
+
+		private Node byDictionary(String key) {
+			IdDictionary d = nodeDictionary;
+			long dbId = d == null ? -1 : d.getDbId(key);
+
+			if (dbId < 0)
+				return null;
+
+			//
+			// The dictionary is only updated after the commits, the node may
+			// have been renamed since.
+			//
+			try {
+				Node n = graphDb.getNodeById(dbId);
+				return key.equals(idOf(n)) ? n : null;
+			} catch (NotFoundException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Nodes without id property are identified by their internal id.
+		 */
+		private Node byInternalId(String key) {
+			if (!key.matches("^\\d+$"))
+				return null;
+
+			try {
+				Node n = graphDb.getNodeById(Long.parseLong(key));
+				return n.hasProperty("id") ? null : n;
+			} catch (NotFoundException e) {
+				return null;
+			}
+		}
+	}
+
+	private class EdgeCache extends Cache<String, Relationship> {
+		public EdgeCache(int capacity) {
+			super(capacity);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.neo4j.tools.Cache#createObject(java.lang.Object)
+		 */
+		protected Relationship createObject(String key)
+				throws CacheCreationException {
+			Relationship r = byDictionary(key);
+
+			if (r == null)
+				r = first(edgeIndex.get("id", key));
+
+			if (r == null)
+				r = byInternalId(key);
+
+			if (r == null)
+				throw new CacheCreationException("Relationship '%s' not found",
+						key);
+
+			return r;
+		}
+
+		/**
+		 * Resolve the keys known by the dictionary, then all the others with
+		 * a single query of the id index.
+		 * 
+		 * @see org.graphstream.neo4j.tools.Cache#createObjects(java.util.Collection)
+		 */
+		protected Map<String, Relationship> createObjects(
+				Collection<String> keys) {
+			HashMap<String, Relationship> edges = new HashMap<String, Relationship>();
+			ArrayList<String> unknown = new ArrayList<String>();
+
+			for (String key : keys) {
+				Relationship r = byDictionary(key);
+
+				if (r == null)
+					unknown.add(key);
+				else
+					edges.put(key, r);
+			}
+
+			queryIds(edgeIndex, unknown, edges);
+
+			for (String key : unknown) {
+				if (!edges.containsKey(key)) {
+					Relationship r = byInternalId(key);
+
+					if (r != null)
+						edges.put(key, r);
+				}
+			}
+
+			return edges;
+		}
+
+		private Relationship byDictionary(String key) {
+			IdDictionary d = edgeDictionary;
+			long dbId = d == null ? -1 : d.getDbId(key);
+
+			if (dbId < 0)
+				return null;
+
+			try {
+				Relationship r = graphDb.getRelationshipById(dbId);
+				return key.equals(idOf(r)) ? r : null;
+			} catch (NotFoundException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Relationships without id property are identified by their internal
+		 * id.
+		 */
+		private Relationship byInternalId(String key) {
+			if (!key.matches("^\\d+$"))
+				return null;
+
+			try {
+				Relationship r = graphDb.getRelationshipById(Long
+						.parseLong(key));
+				return r.hasProperty("id") ? null : r;
+			} catch (NotFoundException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Compare the time needed to resolve cold ids with a full scan Cypher
+	 * query and with the id indexes.
+	 */
+	public static void main(String... args) throws Exception {
+		Neo4JProxy src = new Neo4JProxy();
+		int samples = 100;
+
+		src.connect(args.length > 0 ? args[0] : "dataset/twitter",
+				Mode.READ_ONLY);
+
+		LinkedList<String> nodeIds = new LinkedList<String>();
+		LinkedList<String> edgeIds = new LinkedList<String>();
+		GlobalGraphOperations op = GlobalGraphOperations.at(src.graphDb);
+
+		for (Node n : op.getAllNodes())
+			if (nodeIds.size() < samples)
+				nodeIds.add(src.getNodeId(n));
+
+		for (Relationship r : op.getAllRelationships())
+			if (edgeIds.size() < samples)
+				edgeIds.add(src.getEdgeId(r));
+
+		long m1 = System.currentTimeMillis();
+
+		for (String nodeId : nodeIds)
+			if (!src.executeCypher(
+					"START n=node(*) WHERE n.id! = '" + nodeId + "' RETURN n")
+					.columnAs("n").hasNext())
+				src.executeCypher("START n=node(" + nodeId + ") RETURN n")
+						.columnAs("n").next();
+
+		long m2 = System.currentTimeMillis();
+		System.out.printf("%d nodes, full scan : %dms\n", nodeIds.size(), m2
+				- m1);
+
+		m1 = System.currentTimeMillis();
+
+		for (String nodeId : nodeIds)
+			src.getDBNode(nodeId);
+
+		m2 = System.currentTimeMillis();
+		System.out.printf("%d nodes, index : %dms\n", nodeIds.size(), m2 - m1);
+
+		m1 = System.currentTimeMillis();
+
+		for (String edgeId : edgeIds)
+			if (!src.executeCypher(
+					"START r=rel(*) WHERE r.id! = '" + edgeId + "' RETURN r")
+					.columnAs("r").hasNext())
+				src.executeCypher("START r=rel(" + edgeId + ") RETURN r")
+						.columnAs("r").next();
+
+		m2 = System.currentTimeMillis();
+		System.out.printf("%d edges, full scan : %dms\n", edgeIds.size(), m2
+				- m1);
+
+		m1 = System.currentTimeMillis();
+
+		for (String edgeId : edgeIds)
+			src.getDBEdge(edgeId);
+
+		m2 = System.currentTimeMillis();
+		System.out.printf("%d edges, index : %dms\n", edgeIds.size(), m2 - m1);
+
+		int rounds = 10;
+		m1 = System.nanoTime();
+
+		for (int i = 0; i < rounds; i++) {
+			for (String nodeId : nodeIds) {
+				ExecutionEngine engine = new ExecutionEngine(src.graphDb);
+				engine.execute(
+						"START n=node:`" + NODE_INDEX + "`(id='" + nodeId
+								+ "') RETURN n").columnAs("n").hasNext();
+			}
+		}
+
+		m2 = System.nanoTime();
+		System.out.printf("Cypher lookup, new engine : %.3fms\n", (m2 - m1)
+				/ (1000000.0 * rounds * nodeIds.size()));
+
+		m1 = System.nanoTime();
+
+		for (int i = 0; i < rounds; i++) {
+			for (String nodeId : nodeIds) {
+				src.executeCypher(
+						"START n=node:`" + NODE_INDEX + "`(id={id}) RETURN n",
+						Collections.<String, Object> singletonMap("id", nodeId))
+						.columnAs("n").hasNext();
+			}
+		}
+
+		m2 = System.nanoTime();
+		System.out.printf("Cypher lookup, shared engine : %.3fms\n",
+				(m2 - m1) / (1000000.0 * rounds * nodeIds.size()));
+
+		src.disconnect();
+	}
+}
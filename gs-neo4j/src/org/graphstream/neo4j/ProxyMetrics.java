@@ -0,0 +1,450 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.graphstream.neo4j.tools.LatencyHistogram;
+
+/**
+ * Counters and histograms of a {@link Neo4JProxy}. Recording only costs a few
+ * atomic operations, so metrics are always on. Values read from the caches,
+ * the dispatcher and the running flush are computed when requested.
+ */
+public class ProxyMetrics implements ProxyMetricsMBean {
+	protected final Neo4JProxy proxy;
+
+	protected final AtomicLong commits;
+	protected final AtomicLong commitFailures;
+	protected final AtomicLong skippedWrites;
+	protected final LatencyHistogram commitTime;
+
+	protected final AtomicLong lookupFailures;
+
+	protected final AtomicLongArray events;
+	protected final LatencyHistogram emitTime;
+
+	protected final AtomicLong flushedElements;
+	protected final AtomicLong flushes;
+	protected final AtomicLong flushFailures;
+	protected volatile long lastFlushTime;
+	protected volatile FlushCursor flushCursor;
+
+	protected final AtomicLong dispatchFailures;
+	protected final AtomicLong storageFailures;
+
+	ProxyMetrics(Neo4JProxy proxy) {
+		this.proxy = proxy;
+		this.commits = new AtomicLong();
+		this.commitFailures = new AtomicLong();
+		this.skippedWrites = new AtomicLong();
+		this.commitTime = new LatencyHistogram();
+		this.lookupFailures = new AtomicLong();
+		this.events = new AtomicLongArray(StoreEvent.Type.values().length);
+		this.emitTime = new LatencyHistogram();
+		this.flushedElements = new AtomicLong();
+		this.flushes = new AtomicLong();
+		this.flushFailures = new AtomicLong();
+		this.dispatchFailures = new AtomicLong();
+		this.storageFailures = new AtomicLong();
+	}
+
+	void committed(boolean success, long nanos) {
+		if (success)
+			commits.incrementAndGet();
+		else
+			commitFailures.incrementAndGet();
+
+		commitTime.record(nanos);
+	}
+
+	void writeSkipped() {
+		skippedWrites.incrementAndGet();
+	}
+
+	void lookupFailed() {
+		lookupFailures.incrementAndGet();
+	}
+
+	void emitted(StoreEvent.Type type) {
+		events.incrementAndGet(type.ordinal());
+	}
+
+	void emitted(StoreEvent.Type type, int count) {
+		if (count > 0)
+			events.addAndGet(type.ordinal(), count);
+	}
+
+	void emitTime(long nanos) {
+		emitTime.record(nanos);
+	}
+
+	void flushed() {
+		flushedElements.incrementAndGet();
+	}
+
+	void flushStarted(FlushCursor cursor) {
+		flushCursor = cursor;
+	}
+
+	void flushEnded(FlushCursor cursor, boolean success, long nanos) {
+		if (success) {
+			flushes.incrementAndGet();
+			lastFlushTime = nanos / 1000000;
+		} else
+			flushFailures.incrementAndGet();
+
+		if (flushCursor == cursor)
+			flushCursor = null;
+	}
+
+	void dispatchFailed() {
+		dispatchFailures.incrementAndGet();
+	}
+
+	void storageFailed() {
+		storageFailures.incrementAndGet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getCommitCount()
+	 */
+	public long getCommitCount() {
+		return commits.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getCommitFailureCount()
+	 */
+	public long getCommitFailureCount() {
+		return commitFailures.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getSkippedWriteCount()
+	 */
+	public long getSkippedWriteCount() {
+		return skippedWrites.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getCommitMeanTime()
+	 */
+	public long getCommitMeanTime() {
+		return commitTime.getMean() / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getCommitTime99()
+	 */
+	public long getCommitTime99() {
+		return commitTime.getPercentile(99) / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getNodeCacheHitCount()
+	 */
+	public long getNodeCacheHitCount() {
+		return proxy.nodeCache.getHitCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getNodeCacheMissCount()
+	 */
+	public long getNodeCacheMissCount() {
+		return proxy.nodeCache.getMissCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getNodeCacheEvictionCount()
+	 */
+	public long getNodeCacheEvictionCount() {
+		return proxy.nodeCache.getEvictionCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getNodeCacheSize()
+	 */
+	public int getNodeCacheSize() {
+		return proxy.nodeCache.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getNodeCacheHitRatio()
+	 */
+	public double getNodeCacheHitRatio() {
+		return ratio(proxy.nodeCache.getHitCount(),
+				proxy.nodeCache.getMissCount());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEdgeCacheHitCount()
+	 */
+	public long getEdgeCacheHitCount() {
+		return proxy.edgeCache.getHitCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEdgeCacheMissCount()
+	 */
+	public long getEdgeCacheMissCount() {
+		return proxy.edgeCache.getMissCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEdgeCacheEvictionCount()
+	 */
+	public long getEdgeCacheEvictionCount() {
+		return proxy.edgeCache.getEvictionCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEdgeCacheSize()
+	 */
+	public int getEdgeCacheSize() {
+		return proxy.edgeCache.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEdgeCacheHitRatio()
+	 */
+	public double getEdgeCacheHitRatio() {
+		return ratio(proxy.edgeCache.getHitCount(),
+				proxy.edgeCache.getMissCount());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getLookupFailureCount()
+	 */
+	public long getLookupFailureCount() {
+		return lookupFailures.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEventCount()
+	 */
+	public long getEventCount() {
+		long n = 0;
+
+		for (int i = 0; i < events.length(); i++)
+			n += events.get(i);
+
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEventCounts()
+	 */
+	public String[] getEventCounts() {
+		StoreEvent.Type[] types = StoreEvent.Type.values();
+		String[] counts = new String[types.length];
+
+		for (int i = 0; i < types.length; i++)
+			counts[i] = String.format("%s=%d", types[i], events.get(i));
+
+		return counts;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEmitMeanTime()
+	 */
+	public long getEmitMeanTime() {
+		return emitTime.getMean() / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getEmitTime99()
+	 */
+	public long getEmitTime99() {
+		return emitTime.getPercentile(99) / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#isFlushing()
+	 */
+	public boolean isFlushing() {
+		return flushCursor != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getFlushPosition()
+	 */
+	public String getFlushPosition() {
+		FlushCursor cursor = flushCursor;
+		return cursor == null ? null : cursor.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getFlushedElementCount()
+	 */
+	public long getFlushedElementCount() {
+		return flushedElements.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getFlushCount()
+	 */
+	public long getFlushCount() {
+		return flushes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getFlushFailureCount()
+	 */
+	public long getFlushFailureCount() {
+		return flushFailures.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getLastFlushTime()
+	 */
+	public long getLastFlushTime() {
+		return lastFlushTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getDispatchQueueSize()
+	 */
+	public int getDispatchQueueSize() {
+		EventDispatcher d = proxy.dispatcher;
+		return d == null ? 0 : d.getQueueSize();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getDispatchLag()
+	 */
+	public long getDispatchLag() {
+		EventDispatcher d = proxy.dispatcher;
+		return d == null ? 0 : d.getLag();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getDispatchFailureCount()
+	 */
+	public long getDispatchFailureCount() {
+		return dispatchFailures.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#getStorageFailureCount()
+	 */
+	public long getStorageFailureCount() {
+		return storageFailures.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.neo4j.ProxyMetricsMBean#reset()
+	 */
+	public void reset() {
+		commits.set(0);
+		commitFailures.set(0);
+		skippedWrites.set(0);
+		commitTime.reset();
+		lookupFailures.set(0);
+
+		for (int i = 0; i < events.length(); i++)
+			events.set(i, 0);
+
+		emitTime.reset();
+		flushedElements.set(0);
+		flushes.set(0);
+		flushFailures.set(0);
+		lastFlushTime = 0;
+		dispatchFailures.set(0);
+		storageFailures.set(0);
+	}
+
+	private static double ratio(long hits, long misses) {
+		return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+	}
+}
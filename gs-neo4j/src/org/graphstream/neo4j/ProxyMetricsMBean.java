@@ -0,0 +1,144 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+/**
+ * Management interface of a {@link Neo4JProxy}, registered in the platform
+ * MBean server while the proxy is connected. Durations are given in
+ * microseconds, unless stated otherwise.
+ */
+public interface ProxyMetricsMBean {
+	/**
+	 * Number of transactions committed by the proxy.
+	 */
+	long getCommitCount();
+
+	/**
+	 * Number of transactions of the proxy which have been rolled back.
+	 */
+	long getCommitFailureCount();
+
+	/**
+	 * Number of writes which could not be applied, for example because they
+	 * refer to an unknown element. Their transaction is rolled back.
+	 */
+	long getSkippedWriteCount();
+
+	long getCommitMeanTime();
+
+	long getCommitTime99();
+
+	long getNodeCacheHitCount();
+
+	long getNodeCacheMissCount();
+
+	long getNodeCacheEvictionCount();
+
+	int getNodeCacheSize();
+
+	double getNodeCacheHitRatio();
+
+	long getEdgeCacheHitCount();
+
+	long getEdgeCacheMissCount();
+
+	long getEdgeCacheEvictionCount();
+
+	int getEdgeCacheSize();
+
+	double getEdgeCacheHitRatio();
+
+	/**
+	 * Number of ids which could not be resolved to an element of the store.
+	 */
+	long getLookupFailureCount();
+
+	/**
+	 * Total number of events sent to the sinks.
+	 */
+	long getEventCount();
+
+	/**
+	 * Number of events sent to the sinks, for each type of event.
+	 */
+	String[] getEventCounts();
+
+	/**
+	 * Mean time taken to send the events of a commit, or to queue them if
+	 * asynchronous dispatch is enabled.
+	 */
+	long getEmitMeanTime();
+
+	long getEmitTime99();
+
+	boolean isFlushing();
+
+	/**
+	 * Position of the running flush, or null if the store is not flushed.
+	 */
+	String getFlushPosition();
+
+	/**
+	 * Number of elements sent by flushes and snapshot replays.
+	 */
+	long getFlushedElementCount();
+
+	long getFlushCount();
+
+	long getFlushFailureCount();
+
+	/**
+	 * Duration of the last complete flush, in milliseconds.
+	 */
+	long getLastFlushTime();
+
+	int getDispatchQueueSize();
+
+	/**
+	 * Time, in milliseconds, the oldest queued event has been waiting.
+	 */
+	long getDispatchLag();
+
+	/**
+	 * Number of events of commits on which a sink has failed.
+	 */
+	long getDispatchFailureCount();
+
+	/**
+	 * Number of failed writes of the change log and of the id dictionaries.
+	 */
+	long getStorageFailureCount();
+
+	/**
+	 * Reset the counters and the histograms. Statistics of the caches are not
+	 * reset.
+	 */
+	void reset();
+}
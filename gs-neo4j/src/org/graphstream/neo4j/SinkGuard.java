@@ -0,0 +1,199 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import org.graphstream.stream.AttributeSink;
+import org.graphstream.stream.ElementSink;
+import org.graphstream.stream.Sink;
+
+/**
+ * A sink of the proxy, as registered in its source. A source of gs-core stops
+ * dispatching for good when a sink throws an exception in the middle of an
+ * event, so the failures of the sink are caught here and handed to the
+ * proxy, which throws them once the event has been sent.
+ * 
+ * A guard wraps either the attribute part or the element part of a sink,
+ * depending on the list it is registered in.
+ */
+class SinkGuard implements Sink {
+	protected final Neo4JProxy proxy;
+	protected final AttributeSink attributes;
+	protected final ElementSink elements;
+
+	SinkGuard(Neo4JProxy proxy, AttributeSink attributes) {
+		this.proxy = proxy;
+		this.attributes = attributes;
+		this.elements = null;
+	}
+
+	SinkGuard(Neo4JProxy proxy, ElementSink elements) {
+		this.proxy = proxy;
+		this.attributes = null;
+		this.elements = elements;
+	}
+
+	public void graphAttributeAdded(String sourceId, long timeId,
+			String attribute, Object value) {
+		try {
+			attributes.graphAttributeAdded(sourceId, timeId, attribute, value);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void graphAttributeChanged(String sourceId, long timeId,
+			String attribute, Object oldValue, Object newValue) {
+		try {
+			attributes.graphAttributeChanged(sourceId, timeId, attribute,
+					oldValue, newValue);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void graphAttributeRemoved(String sourceId, long timeId,
+			String attribute) {
+		try {
+			attributes.graphAttributeRemoved(sourceId, timeId, attribute);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void nodeAttributeAdded(String sourceId, long timeId,
+			String nodeId, String attribute, Object value) {
+		try {
+			attributes.nodeAttributeAdded(sourceId, timeId, nodeId, attribute,
+					value);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		try {
+			attributes.nodeAttributeChanged(sourceId, timeId, nodeId,
+					attribute, oldValue, newValue);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			String nodeId, String attribute) {
+		try {
+			attributes.nodeAttributeRemoved(sourceId, timeId, nodeId,
+					attribute);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void edgeAttributeAdded(String sourceId, long timeId,
+			String edgeId, String attribute, Object value) {
+		try {
+			attributes.edgeAttributeAdded(sourceId, timeId, edgeId, attribute,
+					value);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void edgeAttributeChanged(String sourceId, long timeId,
+			String edgeId, String attribute, Object oldValue, Object newValue) {
+		try {
+			attributes.edgeAttributeChanged(sourceId, timeId, edgeId,
+					attribute, oldValue, newValue);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void edgeAttributeRemoved(String sourceId, long timeId,
+			String edgeId, String attribute) {
+		try {
+			attributes.edgeAttributeRemoved(sourceId, timeId, edgeId,
+					attribute);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void nodeAdded(String sourceId, long timeId, String nodeId) {
+		try {
+			elements.nodeAdded(sourceId, timeId, nodeId);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		try {
+			elements.nodeRemoved(sourceId, timeId, nodeId);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void edgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		try {
+			elements.edgeAdded(sourceId, timeId, edgeId, fromNodeId, toNodeId,
+					directed);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+		try {
+			elements.edgeRemoved(sourceId, timeId, edgeId);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void graphCleared(String sourceId, long timeId) {
+		try {
+			elements.graphCleared(sourceId, timeId);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+
+	public void stepBegins(String sourceId, long timeId, double step) {
+		try {
+			elements.stepBegins(sourceId, timeId, step);
+		} catch (RuntimeException e) {
+			proxy.sinkFailed(e);
+		}
+	}
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+/**
+ * A compact binary image of a store, replayed instead of reading the store
+ * when nothing has changed since it was written.
+ * 
+ * The file starts with a header holding the id of the last transaction of
+ * the store at the time of the export, the number of nodes and edges, and
+ * the offsets of the sections following it:
+ * <ul>
+ * <li>the nodes, each one as its id followed by its attributes;</li>
+ * <li>the edges, each one as its id, the ids of its source and target,
+ * followed by its attributes;</li>
+ * <li>the table of the attribute keys.</li>
+ * </ul>
+ * An attribute is the index of its key in the table, the type of its value
+ * and the value itself. Elements are written one after the other as they are
+ * read, so the export does not hold the store in memory: the counts and the
+ * offsets are written in the header once the elements are. The file is
+ * memory-mapped when it is replayed and only the key table is decoded up
+ * front.
+ */
+class Snapshot {
+	static final int MAGIC = 0x4753534E;
+	static final int VERSION = 2;
+
+	/**
+	 * Name of the snapshot file in the store directory.
+	 */
+	static final String FILE_NAME = "gs-snapshot.bin";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int HEADER_SIZE = 40;
+
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte SHORT = 3;
+	private static final byte CHAR = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte STRING = 9;
+	private static final byte ARRAY = 10;
+
+	/**
+	 * Tell if a snapshot file is complete and up to date with a store.
+	 * 
+	 * @param lastTxId
+	 *            id of the last transaction committed in the store
+	 */
+	static boolean isValid(File file, long lastTxId) {
+		if (!file.isFile() || file.length() < HEADER_SIZE + 4)
+			return false;
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+			try {
+				if (raf.readInt() != MAGIC || raf.readInt() != VERSION
+						|| raf.readLong() != lastTxId)
+					return false;
+
+				raf.seek(file.length() - 4);
+				return raf.readInt() == MAGIC;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Export the content of a store. The snapshot is written in a temporary
+	 * file which replaces the previous snapshot once complete.
+	 */
+	static void write(File file, long lastTxId, GraphDatabaseService graphDb,
+			Neo4JProxy proxy) throws IOException {
+		Writer w = new Writer(file);
+		GlobalGraphOperations ops = GlobalGraphOperations.at(graphDb);
+
+		try {
+			for (Node n : ops.getAllNodes()) {
+				w.beginNode(proxy.getNodeId(n));
+				w.attributes(n);
+			}
+
+			for (Relationship r : ops.getAllRelationships()) {
+				w.beginEdge(proxy.getEdgeId(r), proxy.getNodeId(r
+						.getStartNode()), proxy.getNodeId(r.getEndNode()));
+				w.attributes(r);
+			}
+
+			w.finish(lastTxId);
+		} finally {
+			w.abort();
+		}
+	}
+
+	/**
+	 * Send the content of a snapshot to the sinks of a proxy, in the same
+	 * order as a flush: nodes first, then edges, each element followed by its
+	 * attributes.
+	 * 
+	 * @param projection
+	 *            the keys of the attributes which are sent
+	 */
+	static void replay(File file, final Neo4JProxy proxy,
+			AttributeProjection projection) throws IOException {
+		replay(file, new Receiver() {
+			public void node(String nodeId, String[] keys, Object[] values) {
+				proxy.flushNode(nodeId, keys, values);
+			}
+
+			public void edge(String edgeId, String src, String trg,
+					String[] keys, Object[] values) {
+				proxy.flushEdge(edgeId, src, trg, keys, values);
+			}
+		}, projection);
+	}
+
+	/**
+	 * Decode the content of a snapshot, element by element.
+	 * 
+	 * @see #replay(File, Neo4JProxy, AttributeProjection)
+	 */
+	static void replay(File file, Receiver receiver,
+			AttributeProjection projection) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					raf.length());
+		} finally {
+			raf.close();
+		}
+
+		int nodeCount = buffer.getInt(16);
+		int edgeCount = buffer.getInt(20);
+		long keysOffset = buffer.getLong(32);
+
+		buffer.position((int) keysOffset);
+
+		String[] keys = new String[buffer.getInt()];
+		boolean[] accepted = new boolean[keys.length];
+
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = string(buffer);
+			accepted[i] = projection.acceptKey(keys[i]);
+		}
+
+		Rows rows = new Rows(buffer, keys, accepted);
+
+		buffer.position(HEADER_SIZE);
+
+		for (int i = 0; i < nodeCount; i++) {
+			String nodeId = string(buffer);
+
+			rows.read();
+			receiver.node(nodeId, rows.keys(), rows.values());
+		}
+
+		for (int i = 0; i < edgeCount; i++) {
+			String edgeId = string(buffer);
+			String src = string(buffer);
+			String trg = string(buffer);
+
+			rows.read();
+			receiver.edge(edgeId, src, trg, rows.keys(), rows.values());
+		}
+	}
+
+	private static String string(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Receive the elements of a snapshot, or of a flush, with their
+	 * attributes.
+	 */
+	static interface Receiver {
+		void node(String nodeId, String[] keys, Object[] values);
+
+		void edge(String edgeId, String src, String trg, String[] keys,
+				Object[] values);
+	}
+
+	/**
+	 * Write a snapshot element by element, in a temporary file which replaces
+	 * the snapshot once {@link #finish(long)} is called. All the nodes are
+	 * written before the edges. Elements received by the {@link Receiver}
+	 * methods can not throw the failures of the file, which are thrown by
+	 * {@link #finish(long)}.
+	 */
+	static class Writer implements Receiver {
+		private final File file;
+		private final File tmp;
+		private final DataOutputStream out;
+
+		private final HashMap<String, Integer> keyIndex = new HashMap<String, Integer>();
+		private final ArrayList<String> keys = new ArrayList<String>();
+
+		private int nodeCount = 0;
+		private int edgeCount = 0;
+		private long edgesOffset = -1;
+
+		private IOException failure;
+		private boolean closed = false;
+
+		Writer(File file) throws IOException {
+			this.file = file;
+			this.tmp = new File(file.getPath() + ".tmp");
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp), 1 << 16));
+
+			//
+			// The header is written once the sections are.
+			//
+			out.write(new byte[HEADER_SIZE]);
+		}
+
+		public void node(String nodeId, String[] keys, Object[] values) {
+			if (failure != null)
+				return;
+
+			try {
+				beginNode(nodeId);
+				attributes(keys, values);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		public void edge(String edgeId, String src, String trg, String[] keys,
+				Object[] values) {
+			if (failure != null)
+				return;
+
+			try {
+				beginEdge(edgeId, src, trg);
+				attributes(keys, values);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		/**
+		 * Write the key table and the header, and replace the snapshot. The
+		 * writer can not be used anymore.
+		 * 
+		 * @param lastTxId
+		 *            id of the last transaction of the store
+		 */
+		void finish(long lastTxId) throws IOException {
+			long keysOffset;
+
+			try {
+				if (failure != null)
+					throw failure;
+
+				endNodes();
+				keysOffset = out.size();
+				out.writeInt(keys.size());
+
+				for (String key : keys)
+					string(key);
+
+				out.writeInt(MAGIC);
+			} finally {
+				closed = true;
+				out.close();
+			}
+
+			//
+			// The snapshot is memory-mapped when it is replayed.
+			//
+			if (tmp.length() > Integer.MAX_VALUE) {
+				tmp.delete();
+				throw new IOException("store is too large for a snapshot");
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+
+			try {
+				raf.writeInt(MAGIC);
+				raf.writeInt(VERSION);
+				raf.writeLong(lastTxId);
+				raf.writeInt(nodeCount);
+				raf.writeInt(edgeCount);
+				raf.writeLong(edgesOffset);
+				raf.writeLong(keysOffset);
+			} finally {
+				raf.close();
+			}
+
+			file.delete();
+
+			if (!tmp.renameTo(file))
+				throw new IOException("can not write " + file);
+		}
+
+		/**
+		 * Drop the temporary file if the snapshot has not been finished.
+		 */
+		void abort() {
+			if (closed)
+				return;
+
+			closed = true;
+
+			try {
+				out.close();
+			} catch (IOException e) {
+				// The file is deleted anyway
+			}
+
+			tmp.delete();
+		}
+
+		void beginNode(String nodeId) throws IOException {
+			if (edgesOffset >= 0)
+				throw new IllegalStateException("node after the edges");
+
+			string(nodeId);
+			nodeCount++;
+		}
+
+		void beginEdge(String edgeId, String src, String trg)
+				throws IOException {
+			endNodes();
+			string(edgeId);
+			string(src);
+			string(trg);
+			edgeCount++;
+		}
+
+		void attributes(PropertyContainer pc) throws IOException {
+			ArrayList<String> k = new ArrayList<String>();
+
+			for (String key : pc.getPropertyKeys())
+				if (!key.equals("id"))
+					k.add(key);
+
+			out.writeInt(k.size());
+
+			for (String key : k)
+				attribute(key, pc.getProperty(key));
+		}
+
+		void attributes(String[] k, Object[] v) throws IOException {
+			int count = 0;
+
+			for (int i = 0; i < k.length; i++)
+				if (!k[i].equals("id"))
+					count++;
+
+			out.writeInt(count);
+
+			for (int i = 0; i < k.length; i++)
+				if (!k[i].equals("id"))
+					attribute(k[i], v[i]);
+		}
+
+		private void endNodes() {
+			if (edgesOffset < 0)
+				edgesOffset = out.size();
+		}
+
+		private void attribute(String key, Object value) throws IOException {
+			byte type = typeOf(value);
+
+			out.writeInt(key(key));
+			out.writeByte(type);
+
+			if (type == ARRAY)
+				encodeArray(value);
+			else
+				encode(type, value);
+		}
+
+		private int key(String key) {
+			Integer i = keyIndex.get(key);
+
+			if (i == null) {
+				i = keys.size();
+				keyIndex.put(key, i);
+				keys.add(key);
+			}
+
+			return i;
+		}
+
+		private void string(String s) throws IOException {
+			byte[] bytes = s.getBytes(UTF8);
+
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private void encode(byte type, Object value) throws IOException {
+			switch (type) {
+			case BOOLEAN:
+				out.writeBoolean((Boolean) value);
+				break;
+			case BYTE:
+				out.writeByte((Byte) value);
+				break;
+			case SHORT:
+				out.writeShort((Short) value);
+				break;
+			case CHAR:
+				out.writeChar((Character) value);
+				break;
+			case INT:
+				out.writeInt((Integer) value);
+				break;
+			case LONG:
+				out.writeLong((Long) value);
+				break;
+			case FLOAT:
+				out.writeFloat((Float) value);
+				break;
+			case DOUBLE:
+				out.writeDouble((Double) value);
+				break;
+			default:
+				string((String) value);
+			}
+		}
+
+		private void encodeArray(Object array) throws IOException {
+			Class<?> component = array.getClass().getComponentType();
+			byte type = typeOf(component, component);
+			int length = Array.getLength(array);
+
+			out.writeByte(type);
+			out.writeInt(length);
+
+			for (int i = 0; i < length; i++)
+				encode(type, Array.get(array, i));
+		}
+	}
+
+	/**
+	 * Decode the attributes of an element.
+	 */
+	private static class Rows {
+		final ByteBuffer buffer;
+		final String[] keys;
+		final boolean[] accepted;
+
+		final ArrayList<String> k = new ArrayList<String>();
+		final ArrayList<Object> v = new ArrayList<Object>();
+
+		Rows(ByteBuffer buffer, String[] keys, boolean[] accepted) {
+			this.buffer = buffer;
+			this.keys = keys;
+			this.accepted = accepted;
+		}
+
+		void read() {
+			int count = buffer.getInt();
+
+			k.clear();
+			v.clear();
+
+			for (int row = 0; row < count; row++) {
+				int key = buffer.getInt();
+				byte type = buffer.get();
+				Object value = type == ARRAY ? decodeArray() : decode(type);
+
+				if (accepted[key]) {
+					k.add(keys[key]);
+					v.add(value);
+				}
+			}
+		}
+
+		String[] keys() {
+			return k.toArray(new String[k.size()]);
+		}
+
+		Object[] values() {
+			return v.toArray();
+		}
+
+		private Object decode(byte type) {
+			switch (type) {
+			case BOOLEAN:
+				return buffer.get() != 0;
+			case BYTE:
+				return buffer.get();
+			case SHORT:
+				return buffer.getShort();
+			case CHAR:
+				return buffer.getChar();
+			case INT:
+				return buffer.getInt();
+			case LONG:
+				return buffer.getLong();
+			case FLOAT:
+				return buffer.getFloat();
+			case DOUBLE:
+				return buffer.getDouble();
+			case STRING:
+				return string(buffer);
+			default:
+				throw new IllegalStateException("unknown value type " + type);
+			}
+		}
+
+		private Object decodeArray() {
+			byte type = buffer.get();
+			int length = buffer.getInt();
+			Object array = Array.newInstance(componentType(type), length);
+
+			for (int i = 0; i < length; i++)
+				Array.set(array, i, decode(type));
+
+			return array;
+		}
+	}
+
+	private static byte typeOf(Object value) {
+		if (value.getClass().isArray())
+			return ARRAY;
+
+		return typeOf(value.getClass(), null);
+	}
+
+	private static byte typeOf(Class<?> boxed, Class<?> primitive) {
+		if (boxed == Boolean.class || primitive == boolean.class)
+			return BOOLEAN;
+		if (boxed == Byte.class || primitive == byte.class)
+			return BYTE;
+		if (boxed == Short.class || primitive == short.class)
+			return SHORT;
+		if (boxed == Character.class || primitive == char.class)
+			return CHAR;
+		if (boxed == Integer.class || primitive == int.class)
+			return INT;
+		if (boxed == Long.class || primitive == long.class)
+			return LONG;
+		if (boxed == Float.class || primitive == float.class)
+			return FLOAT;
+		if (boxed == Double.class || primitive == double.class)
+			return DOUBLE;
+		if (boxed == String.class)
+			return STRING;
+
+		throw new IllegalArgumentException("unsupported property type "
+				+ boxed.getName());
+	}
+
+	private static Class<?> componentType(byte type) {
+		switch (type) {
+		case BOOLEAN:
+			return boolean.class;
+		case BYTE:
+			return byte.class;
+		case SHORT:
+			return short.class;
+		case CHAR:
+			return char.class;
+		case INT:
+			return int.class;
+		case LONG:
+			return long.class;
+		case FLOAT:
+			return float.class;
+		case DOUBLE:
+			return double.class;
+		default:
+			return String.class;
+		}
+	}
+}
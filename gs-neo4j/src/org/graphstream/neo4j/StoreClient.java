@@ -0,0 +1,234 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.graphstream.stream.SourceBase;
+
+/**
+ * A source receiving the graph shared by a {@link StoreServer}.
+ * 
+ * The server sends the content of the store and then the changes committed
+ * since the connection, some of which may already be part of the content.
+ * The client keeps track of the elements it has sent so that these changes
+ * are harmless: elements added twice, removals of unknown elements and
+ * events of elements it does not hold are dropped.
+ * 
+ * Events are read in the thread calling {@link #nextEvents()}, in the same
+ * way as a file source.
+ */
+public class StoreClient extends SourceBase {
+	protected final String host;
+	protected final int port;
+
+	protected Socket socket;
+	protected DataInputStream in;
+
+	protected final HashSet<String> nodes;
+	protected final HashMap<String, String[]> edges;
+	protected final HashMap<String, HashSet<String>> incident;
+
+	public StoreClient(String host, int port) {
+		this.host = host;
+		this.port = port;
+		this.nodes = new HashSet<String>();
+		this.edges = new HashMap<String, String[]>();
+		this.incident = new HashMap<String, HashSet<String>>();
+	}
+
+	/**
+	 * Connect to the server.
+	 * 
+	 * @throws IOException
+	 *             if the server can not be reached, or if it is not a store
+	 *             server
+	 */
+	public void connect() throws IOException {
+		if (socket != null)
+			throw new IllegalStateException("client is already connected");
+
+		Socket s = new Socket(host, port);
+
+		try {
+			s.setTcpNoDelay(true);
+
+			DataInputStream input = new DataInputStream(
+					new BufferedInputStream(s.getInputStream(), 1 << 16));
+
+			if (input.readInt() != StoreServer.MAGIC)
+				throw new IOException("not a store server");
+
+			int version = input.readInt();
+
+			if (version != StoreServer.VERSION)
+				throw new IOException("unsupported protocol version "
+						+ version);
+
+			socket = s;
+			in = input;
+		} catch (IOException e) {
+			s.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read a frame of events and send them to the sinks. This waits until the
+	 * server sends a frame.
+	 * 
+	 * @return false if the server has closed the connection
+	 * @throws IOException
+	 *             if the connection fails or if a frame is corrupted
+	 */
+	public boolean nextEvents() throws IOException {
+		if (in == null)
+			throw new IllegalStateException("client is not connected");
+
+		int count;
+
+		try {
+			in.readInt();
+			count = in.readInt();
+		} catch (EOFException e) {
+			return false;
+		}
+
+		for (int i = 0; i < count; i++)
+			receive(StoreEvent.read(in));
+
+		return true;
+	}
+
+	/**
+	 * Close the connection. The elements received stay in the sinks.
+	 */
+	public void close() throws IOException {
+		if (socket != null) {
+			socket.close();
+			socket = null;
+			in = null;
+		}
+
+		nodes.clear();
+		edges.clear();
+		incident.clear();
+	}
+
+	protected void receive(StoreEvent e) {
+		String id = e.getElementId();
+
+		switch (e.getType()) {
+		case NODE_ADDED:
+			if (!nodes.add(id))
+				return;
+			break;
+		case NODE_REMOVED:
+			if (!nodes.remove(id))
+				return;
+
+			HashSet<String> removed = incident.remove(id);
+
+			if (removed != null)
+				for (String edgeId : removed)
+					detach(edgeId, id);
+			break;
+		case EDGE_ADDED:
+			if (edges.containsKey(id) || !nodes.contains(e.getSource())
+					|| !nodes.contains(e.getTarget()))
+				return;
+
+			edges.put(id, new String[] { e.getSource(), e.getTarget() });
+			incidentOf(e.getSource()).add(id);
+			incidentOf(e.getTarget()).add(id);
+			break;
+		case EDGE_REMOVED:
+			if (detach(id, null) == null)
+				return;
+			break;
+		case NODE_ATTRIBUTE_ADDED:
+		case NODE_ATTRIBUTE_CHANGED:
+		case NODE_ATTRIBUTE_REMOVED:
+			if (!nodes.contains(id))
+				return;
+			break;
+		case EDGE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_REMOVED:
+			if (!edges.containsKey(id))
+				return;
+			break;
+		case GRAPH_CLEARED:
+			nodes.clear();
+			edges.clear();
+			incident.clear();
+			break;
+		case STEP_BEGINS:
+			break;
+		}
+
+		e.sendTo(this, sourceId);
+	}
+
+	private HashSet<String> incidentOf(String nodeId) {
+		HashSet<String> set = incident.get(nodeId);
+
+		if (set == null) {
+			set = new HashSet<String>();
+			incident.put(nodeId, set);
+		}
+
+		return set;
+	}
+
+	/**
+	 * Forget an edge, skipping the endpoint being removed if any.
+	 */
+	private String[] detach(String edgeId, String removedNode) {
+		String[] ends = edges.remove(edgeId);
+
+		if (ends != null)
+			for (String nodeId : ends)
+				if (!nodeId.equals(removedNode)) {
+					HashSet<String> set = incident.get(nodeId);
+
+					if (set != null)
+						set.remove(edgeId);
+				}
+
+		return ends;
+	}
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+
+import org.graphstream.stream.SourceBase;
+
+/**
+ * A copy of a change of the store, which can be sent later to the sinks of a
+ * source. Events are created from the transaction data of a commit, which is
+ * only valid in the committing thread.
+ * 
+ * Events have a compact binary encoding, see {@link #write(DataOutput)} and
+ * {@link #read(DataInput)}. Attribute values can be null, primitive wrappers,
+ * strings, or arrays of these types, which are the values a Neo4j property
+ * can take.
+ */
+public class StoreEvent {
+	public static enum Type {
+		NODE_ADDED, NODE_REMOVED, EDGE_ADDED, EDGE_REMOVED,
+		NODE_ATTRIBUTE_ADDED, NODE_ATTRIBUTE_CHANGED, NODE_ATTRIBUTE_REMOVED,
+		EDGE_ATTRIBUTE_ADDED, EDGE_ATTRIBUTE_CHANGED, EDGE_ATTRIBUTE_REMOVED,
+		GRAPH_CLEARED, STEP_BEGINS
+	}
+
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte SHORT = 3;
+	private static final byte CHAR = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte STRING = 9;
+	private static final byte ARRAY = 10;
+
+	private static final Class<?>[] COMPONENTS = { null, boolean.class,
+			byte.class, short.class, char.class, int.class, long.class,
+			float.class, double.class, String.class };
+
+	protected final Type type;
+	protected final String elementId;
+	protected final String source;
+	protected final String target;
+	protected final boolean directed;
+	protected final String attribute;
+	protected Object oldValue;
+	protected Object value;
+	protected final double step;
+
+	protected StoreEvent(Type type, String elementId, String source,
+			String target, boolean directed, String attribute,
+			Object oldValue, Object value, double step) {
+		this.type = type;
+		this.elementId = elementId;
+		this.source = source;
+		this.target = target;
+		this.directed = directed;
+		this.attribute = attribute;
+		this.oldValue = oldValue;
+		this.value = value;
+		this.step = step;
+	}
+
+	public static StoreEvent nodeAdded(String nodeId) {
+		return new StoreEvent(Type.NODE_ADDED, nodeId, null, null, false,
+				null, null, null, 0);
+	}
+
+	public static StoreEvent nodeRemoved(String nodeId) {
+		return new StoreEvent(Type.NODE_REMOVED, nodeId, null, null, false,
+				null, null, null, 0);
+	}
+
+	public static StoreEvent edgeAdded(String edgeId, String source,
+			String target, boolean directed) {
+		return new StoreEvent(Type.EDGE_ADDED, edgeId, source, target,
+				directed, null, null, null, 0);
+	}
+
+	public static StoreEvent edgeRemoved(String edgeId) {
+		return new StoreEvent(Type.EDGE_REMOVED, edgeId, null, null, false,
+				null, null, null, 0);
+	}
+
+	public static StoreEvent nodeAttributeAdded(String nodeId,
+			String attribute, Object value) {
+		return new StoreEvent(Type.NODE_ATTRIBUTE_ADDED, nodeId, null, null,
+				false, attribute, null, value, 0);
+	}
+
+	public static StoreEvent nodeAttributeChanged(String nodeId,
+			String attribute, Object oldValue, Object value) {
+		return new StoreEvent(Type.NODE_ATTRIBUTE_CHANGED, nodeId, null, null,
+				false, attribute, oldValue, value, 0);
+	}
+
+	public static StoreEvent nodeAttributeRemoved(String nodeId,
+			String attribute) {
+		return new StoreEvent(Type.NODE_ATTRIBUTE_REMOVED, nodeId, null, null,
+				false, attribute, null, null, 0);
+	}
+
+	public static StoreEvent edgeAttributeAdded(String edgeId,
+			String attribute, Object value) {
+		return new StoreEvent(Type.EDGE_ATTRIBUTE_ADDED, edgeId, null, null,
+				false, attribute, null, value, 0);
+	}
+
+	public static StoreEvent edgeAttributeChanged(String edgeId,
+			String attribute, Object oldValue, Object value) {
+		return new StoreEvent(Type.EDGE_ATTRIBUTE_CHANGED, edgeId, null, null,
+				false, attribute, oldValue, value, 0);
+	}
+
+	public static StoreEvent edgeAttributeRemoved(String edgeId,
+			String attribute) {
+		return new StoreEvent(Type.EDGE_ATTRIBUTE_REMOVED, edgeId, null, null,
+				false, attribute, null, null, 0);
+	}
+
+	public static StoreEvent graphCleared() {
+		return new StoreEvent(Type.GRAPH_CLEARED, null, null, null, false,
+				null, null, null, 0);
+	}
+
+	public static StoreEvent stepBegins(double step) {
+		return new StoreEvent(Type.STEP_BEGINS, null, null, null, false, null,
+				null, null, step);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Id of the node or of the edge concerned by this event, null for graph
+	 * events.
+	 */
+	public String getElementId() {
+		return elementId;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	public String getAttribute() {
+		return attribute;
+	}
+
+	public Object getOldValue() {
+		return oldValue;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public double getStep() {
+		return step;
+	}
+
+	/**
+	 * True if this event adds or changes the value of an attribute.
+	 */
+	public boolean isAttributeUpdate() {
+		switch (type) {
+		case NODE_ATTRIBUTE_ADDED:
+		case NODE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_CHANGED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * True if this event concerns an edge.
+	 */
+	public boolean isEdgeEvent() {
+		switch (type) {
+		case EDGE_ADDED:
+		case EDGE_REMOVED:
+		case EDGE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_REMOVED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Send this event to the sinks of a source.
+	 * 
+	 * @param src
+	 *            the source sending the event
+	 * @param sourceId
+	 *            id of the source given to the sinks
+	 */
+	public void sendTo(SourceBase src, String sourceId) {
+		switch (type) {
+		case NODE_ADDED:
+			src.sendNodeAdded(sourceId, elementId);
+			break;
+		case NODE_REMOVED:
+			src.sendNodeRemoved(sourceId, elementId);
+			break;
+		case EDGE_ADDED:
+			src.sendEdgeAdded(sourceId, elementId, source, target, directed);
+			break;
+		case EDGE_REMOVED:
+			src.sendEdgeRemoved(sourceId, elementId);
+			break;
+		case NODE_ATTRIBUTE_ADDED:
+			src.sendNodeAttributeAdded(sourceId, elementId, attribute, value);
+			break;
+		case NODE_ATTRIBUTE_CHANGED:
+			src.sendNodeAttributeChanged(sourceId, elementId, attribute,
+					oldValue, value);
+			break;
+		case NODE_ATTRIBUTE_REMOVED:
+			src.sendNodeAttributeRemoved(sourceId, elementId, attribute);
+			break;
+		case EDGE_ATTRIBUTE_ADDED:
+			src.sendEdgeAttributeAdded(sourceId, elementId, attribute, value);
+			break;
+		case EDGE_ATTRIBUTE_CHANGED:
+			src.sendEdgeAttributeChanged(sourceId, elementId, attribute,
+					oldValue, value);
+			break;
+		case EDGE_ATTRIBUTE_REMOVED:
+			src.sendEdgeAttributeRemoved(sourceId, elementId, attribute);
+			break;
+		case GRAPH_CLEARED:
+			src.sendGraphCleared(sourceId);
+			break;
+		case STEP_BEGINS:
+			src.sendStepBegins(sourceId, step);
+			break;
+		}
+	}
+
+	/**
+	 * Write the binary encoding of this event. Only the fields used by the
+	 * type of the event are written.
+	 * 
+	 * @throws IOException
+	 *             if the output fails or if a value can not be encoded
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(type.ordinal());
+
+		switch (type) {
+		case GRAPH_CLEARED:
+			break;
+		case STEP_BEGINS:
+			out.writeDouble(step);
+			break;
+		case EDGE_ADDED:
+			writeString(out, elementId);
+			writeString(out, source);
+			writeString(out, target);
+			out.writeBoolean(directed);
+			break;
+		case NODE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_ADDED:
+			writeString(out, elementId);
+			writeString(out, attribute);
+			writeValue(out, value);
+			break;
+		case NODE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_CHANGED:
+			writeString(out, elementId);
+			writeString(out, attribute);
+			writeValue(out, oldValue);
+			writeValue(out, value);
+			break;
+		case NODE_ATTRIBUTE_REMOVED:
+		case EDGE_ATTRIBUTE_REMOVED:
+			writeString(out, elementId);
+			writeString(out, attribute);
+			break;
+		default:
+			writeString(out, elementId);
+			break;
+		}
+	}
+
+	/**
+	 * Read an event written by {@link #write(DataOutput)}.
+	 */
+	public static StoreEvent read(DataInput in) throws IOException {
+		int ordinal = in.readUnsignedByte();
+
+		if (ordinal >= Type.values().length)
+			throw new IOException("unknown event type " + ordinal);
+
+		Type type = Type.values()[ordinal];
+
+		switch (type) {
+		case GRAPH_CLEARED:
+			return graphCleared();
+		case STEP_BEGINS:
+			return stepBegins(in.readDouble());
+		case EDGE_ADDED:
+			return edgeAdded(readString(in), readString(in), readString(in),
+					in.readBoolean());
+		case NODE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_ADDED:
+			return new StoreEvent(type, readString(in), null, null, false,
+					readString(in), null, readValue(in), 0);
+		case NODE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_CHANGED:
+			return new StoreEvent(type, readString(in), null, null, false,
+					readString(in), readValue(in), readValue(in), 0);
+		case NODE_ATTRIBUTE_REMOVED:
+		case EDGE_ATTRIBUTE_REMOVED:
+			return new StoreEvent(type, readString(in), null, null, false,
+					readString(in), null, null, 0);
+		default:
+			return new StoreEvent(type, readString(in), null, null, false,
+					null, null, null, 0);
+		}
+	}
+
+	private static void writeString(DataOutput out, String s)
+			throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0)
+			return null;
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeValue(DataOutput out, Object value)
+			throws IOException {
+		if (value != null && value.getClass().isArray()) {
+			byte tag = tagOf(value.getClass().getComponentType());
+			int length = Array.getLength(value);
+
+			if (tag == NULL)
+				throw new IOException("unsupported value type "
+						+ value.getClass().getName());
+
+			out.writeByte(ARRAY);
+			out.writeByte(tag);
+			out.writeInt(length);
+
+			for (int i = 0; i < length; i++)
+				writeRaw(out, tag, Array.get(value, i));
+		} else {
+			byte tag = value == null ? NULL : tagOf(value.getClass());
+
+			if (value != null && tag == NULL)
+				throw new IOException("unsupported value type "
+						+ value.getClass().getName());
+
+			out.writeByte(tag);
+			writeRaw(out, tag, value);
+		}
+	}
+
+	private static Object readValue(DataInput in) throws IOException {
+		byte tag = in.readByte();
+
+		if (tag != ARRAY)
+			return readRaw(in, tag);
+
+		byte component = in.readByte();
+
+		if (component <= NULL || component > STRING)
+			throw new IOException("unknown array type " + component);
+
+		int length = in.readInt();
+		Object array = Array.newInstance(COMPONENTS[component], length);
+
+		for (int i = 0; i < length; i++)
+			Array.set(array, i, readRaw(in, component));
+
+		return array;
+	}
+
+	private static void writeRaw(DataOutput out, byte tag, Object value)
+			throws IOException {
+		switch (tag) {
+		case BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		case BYTE:
+			out.writeByte((Byte) value);
+			break;
+		case SHORT:
+			out.writeShort((Short) value);
+			break;
+		case CHAR:
+			out.writeChar((Character) value);
+			break;
+		case INT:
+			out.writeInt((Integer) value);
+			break;
+		case LONG:
+			out.writeLong((Long) value);
+			break;
+		case FLOAT:
+			out.writeFloat((Float) value);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case STRING:
+			writeString(out, (String) value);
+			break;
+		}
+	}
+
+	private static Object readRaw(DataInput in, byte tag) throws IOException {
+		switch (tag) {
+		case NULL:
+			return null;
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case CHAR:
+			return in.readChar();
+		case INT:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case STRING:
+			return readString(in);
+		default:
+			throw new IOException("unknown value type " + tag);
+		}
+	}
+
+	private static byte tagOf(Class<?> c) {
+		if (c == Boolean.class || c == boolean.class)
+			return BOOLEAN;
+		if (c == Byte.class || c == byte.class)
+			return BYTE;
+		if (c == Short.class || c == short.class)
+			return SHORT;
+		if (c == Character.class || c == char.class)
+			return CHAR;
+		if (c == Integer.class || c == int.class)
+			return INT;
+		if (c == Long.class || c == long.class)
+			return LONG;
+		if (c == Float.class || c == float.class)
+			return FLOAT;
+		if (c == Double.class || c == double.class)
+			return DOUBLE;
+		if (c == String.class)
+			return STRING;
+
+		return NULL;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(%s)", type, elementId);
+	}
+}
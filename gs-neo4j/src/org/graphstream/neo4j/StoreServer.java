@@ -0,0 +1,501 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.db.DatabaseConnectionException;
+import org.graphstream.stream.db.DatabaseProxy.Mode;
+
+/**
+ * A server sharing the store opened by a proxy with viewers running in other
+ * processes, which receive the graph with a {@link StoreClient}.
+ * 
+ * Each client first receives the content of the store, read as by a flush,
+ * and then the changes committed since it has connected. The changes
+ * committed while the store is read are sent after it, the client drops
+ * those it has already seen in the content of the store.
+ * 
+ * A connection starts with {@link #MAGIC} and {@link #VERSION}, followed by
+ * frames of events. A frame is the size in bytes of its events, the number
+ * of events and the events themselves, in the binary encoding of
+ * {@link StoreEvent}. The events waiting for a client are sent together in a
+ * single frame, up to the batch size, so a busy client gets few large
+ * frames while an idle one gets each change as soon as it is committed.
+ * 
+ * Changes wait for each client in a queue of its own. A client which is too
+ * slow to keep up fills its queue and is disconnected, instead of slowing
+ * the proxy and the other clients down. It can connect again to get the
+ * whole graph.
+ */
+public class StoreServer {
+	public static final int MAGIC = 0x4753534E;
+	public static final int VERSION = 1;
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * Bounds, in milliseconds, of the delay before accepting connections
+	 * again after a failure.
+	 */
+	protected static final long MIN_ACCEPT_DELAY = 10;
+	protected static final long MAX_ACCEPT_DELAY = 5000;
+
+	protected final Neo4JProxy proxy;
+	protected final InetSocketAddress address;
+	protected final int queueCapacity;
+	protected final int batchSize;
+
+	protected final CopyOnWriteArrayList<Client> clients;
+	protected final Recorder changes;
+	protected final AtomicLong dropped;
+
+	protected ServerSocket serverSocket;
+	protected Thread acceptor;
+
+	/**
+	 * Create a server listening on the loopback interface.
+	 * 
+	 * @param port
+	 *            the port, zero to use any free port
+	 */
+	public StoreServer(Neo4JProxy proxy, int port) {
+		this(proxy, new InetSocketAddress("localhost", port),
+				DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Create a server.
+	 * 
+	 * @param address
+	 *            the address the server listens on
+	 * @param queueCapacity
+	 *            maximum number of changes waiting for a client before it is
+	 *            disconnected
+	 * @param batchSize
+	 *            maximum number of events in a frame
+	 */
+	public StoreServer(Neo4JProxy proxy, InetSocketAddress address,
+			int queueCapacity, int batchSize) {
+		this.proxy = proxy;
+		this.address = address;
+		this.queueCapacity = Math.max(1, queueCapacity);
+		this.batchSize = Math.max(1, batchSize);
+		this.clients = new CopyOnWriteArrayList<Client>();
+		this.dropped = new AtomicLong();
+
+		this.changes = new Recorder() {
+			void record(StoreEvent e) {
+				for (Client c : clients)
+					c.offer(e);
+			}
+		};
+	}
+
+	/**
+	 * Start listening. The proxy has to be connected to a store, and to send
+	 * all the changes of the store: it can not be in write-only or lazy mode.
+	 */
+	public synchronized void start() throws IOException {
+		if (serverSocket != null)
+			throw new IllegalStateException("server is already started");
+
+		if (proxy.graphDb == null || proxy.mode == Mode.WRITE_ONLY
+				|| proxy.lazy)
+			throw new IllegalStateException(
+					"proxy does not send the changes of a store");
+
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(address);
+
+		proxy.addSink(changes);
+
+		final ServerSocket ss = serverSocket;
+
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept(ss);
+			}
+		}, "neo4j-server");
+
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stop listening and disconnect all the clients.
+	 */
+	public synchronized void stop() throws IOException {
+		if (serverSocket == null)
+			return;
+
+		serverSocket.close();
+		serverSocket = null;
+
+		//
+		// The acceptor may be waiting before accepting again.
+		//
+		acceptor.interrupt();
+
+		try {
+			acceptor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		proxy.removeSink(changes);
+
+		for (Client c : clients)
+			c.close();
+	}
+
+	/**
+	 * Port the server listens on.
+	 */
+	public synchronized int getPort() {
+		if (serverSocket == null)
+			throw new IllegalStateException("server is not started");
+
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Number of clients currently connected.
+	 */
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/**
+	 * Number of clients disconnected because they were too slow.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Accept the clients until the server socket is closed. A failure to
+	 * accept a connection, for example when no file descriptor is left, is
+	 * tried again after a delay doubling at each consecutive failure.
+	 */
+	protected void accept(ServerSocket ss) {
+		int count = 0;
+		long delay = 0;
+
+		while (!ss.isClosed()) {
+			Socket socket;
+
+			try {
+				socket = ss.accept();
+				delay = 0;
+			} catch (IOException e) {
+				if (ss.isClosed())
+					break;
+
+				e.printStackTrace();
+				delay = Math.min(MAX_ACCEPT_DELAY, Math.max(
+						MIN_ACCEPT_DELAY, delay * 2));
+
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					break;
+				}
+
+				continue;
+			}
+
+			//
+			// The client gets the changes from now on, before the store is
+			// read, so that it does not miss any of them.
+			//
+			Client c = new Client(socket);
+			clients.add(c);
+
+			Thread t = new Thread(c, "neo4j-server-client-" + count++);
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * A connected client, with its queue of changes and the thread writing
+	 * to its socket.
+	 */
+	protected class Client implements Runnable {
+		final Socket socket;
+		final LinkedList<StoreEvent> queue;
+		boolean closed;
+
+		Client(Socket socket) {
+			this.socket = socket;
+			this.queue = new LinkedList<StoreEvent>();
+		}
+
+		/**
+		 * Add a change to the queue. This never waits, a client whose queue
+		 * is full is disconnected.
+		 */
+		synchronized void offer(StoreEvent e) {
+			if (closed)
+				return;
+
+			if (queue.size() >= queueCapacity) {
+				dropped.incrementAndGet();
+				close();
+				return;
+			}
+
+			queue.add(e);
+			notify();
+		}
+
+		/**
+		 * Wait for changes and move them to a batch.
+		 * 
+		 * @return false if the client has been closed
+		 */
+		synchronized boolean take(List<StoreEvent> batch)
+				throws InterruptedException {
+			while (!closed && queue.size() == 0)
+				wait();
+
+			if (closed)
+				return false;
+
+			while (batch.size() < batchSize && queue.size() > 0)
+				batch.add(queue.removeFirst());
+
+			return true;
+		}
+
+		public void run() {
+			try {
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(socket.getOutputStream(),
+								1 << 16));
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				final FrameWriter writer = new FrameWriter(out);
+
+				proxy.flushDB(new Recorder() {
+					void record(StoreEvent e) {
+						try {
+							writer.add(e);
+						} catch (IOException ioe) {
+							close();
+							throw new RuntimeException(ioe);
+						}
+					}
+				});
+
+				writer.flush();
+
+				ArrayList<StoreEvent> batch = new ArrayList<StoreEvent>();
+
+				while (take(batch)) {
+					for (StoreEvent e : batch)
+						writer.add(e);
+
+					writer.flush();
+					batch.clear();
+				}
+			} catch (IOException e) {
+				// The client has gone
+			} catch (DatabaseConnectionException e) {
+				if (!isClosed())
+					e.printStackTrace();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				close();
+			}
+		}
+
+		synchronized boolean isClosed() {
+			return closed;
+		}
+
+		void close() {
+			synchronized (this) {
+				if (closed)
+					return;
+
+				closed = true;
+				queue.clear();
+				notifyAll();
+			}
+
+			clients.remove(this);
+
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+
+	/**
+	 * Encode events in frames of at most the batch size.
+	 */
+	protected class FrameWriter {
+		final DataOutputStream out;
+		final ByteArrayOutputStream bytes;
+		final DataOutputStream frame;
+		int count;
+
+		FrameWriter(DataOutputStream out) {
+			this.out = out;
+			this.bytes = new ByteArrayOutputStream(1 << 16);
+			this.frame = new DataOutputStream(bytes);
+		}
+
+		void add(StoreEvent e) throws IOException {
+			e.write(frame);
+			count++;
+
+			if (count >= batchSize)
+				flush();
+		}
+
+		/**
+		 * Send the events added since the last frame.
+		 */
+		void flush() throws IOException {
+			if (count > 0) {
+				frame.flush();
+				out.writeInt(bytes.size());
+				out.writeInt(count);
+				bytes.writeTo(out);
+				bytes.reset();
+				count = 0;
+			}
+
+			out.flush();
+		}
+	}
+
+	/**
+	 * A sink turning the events it receives into store events. Graph
+	 * attributes are not part of the store and are ignored.
+	 */
+	protected abstract static class Recorder implements Sink {
+		abstract void record(StoreEvent e);
+
+		public void graphAttributeAdded(String sourceId, long timeId,
+				String attribute, Object value) {
+		}
+
+		public void graphAttributeChanged(String sourceId, long timeId,
+				String attribute, Object oldValue, Object newValue) {
+		}
+
+		public void graphAttributeRemoved(String sourceId, long timeId,
+				String attribute) {
+		}
+
+		public void nodeAttributeAdded(String sourceId, long timeId,
+				String nodeId, String attribute, Object value) {
+			record(StoreEvent.nodeAttributeAdded(nodeId, attribute, value));
+		}
+
+		public void nodeAttributeChanged(String sourceId, long timeId,
+				String nodeId, String attribute, Object oldValue,
+				Object newValue) {
+			record(StoreEvent.nodeAttributeChanged(nodeId, attribute,
+					oldValue, newValue));
+		}
+
+		public void nodeAttributeRemoved(String sourceId, long timeId,
+				String nodeId, String attribute) {
+			record(StoreEvent.nodeAttributeRemoved(nodeId, attribute));
+		}
+
+		public void edgeAttributeAdded(String sourceId, long timeId,
+				String edgeId, String attribute, Object value) {
+			record(StoreEvent.edgeAttributeAdded(edgeId, attribute, value));
+		}
+
+		public void edgeAttributeChanged(String sourceId, long timeId,
+				String edgeId, String attribute, Object oldValue,
+				Object newValue) {
+			record(StoreEvent.edgeAttributeChanged(edgeId, attribute,
+					oldValue, newValue));
+		}
+
+		public void edgeAttributeRemoved(String sourceId, long timeId,
+				String edgeId, String attribute) {
+			record(StoreEvent.edgeAttributeRemoved(edgeId, attribute));
+		}
+
+		public void nodeAdded(String sourceId, long timeId, String nodeId) {
+			record(StoreEvent.nodeAdded(nodeId));
+		}
+
+		public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+			record(StoreEvent.nodeRemoved(nodeId));
+		}
+
+		public void edgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			record(StoreEvent.edgeAdded(edgeId, fromNodeId, toNodeId,
+					directed));
+		}
+
+		public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+			record(StoreEvent.edgeRemoved(edgeId));
+		}
+
+		public void graphCleared(String sourceId, long timeId) {
+			record(StoreEvent.graphCleared());
+		}
+
+		public void stepBegins(String sourceId, long timeId, double step) {
+			record(StoreEvent.stepBegins(step));
+		}
+	}
+}
@@ -0,0 +1,716 @@
+/*
+ * This file is part of d3.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 Guilhelm Savin
+ */
+package org.graphstream.neo4j.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache with a least-recently-used eviction policy.
+ * 
+ * Entries are spread over several segments, each one being an access-ordered
+ * hash map protected by its own lock, so that hits are computed in constant
+ * time and threads working on different keys do not wait for each other.
+ * When several threads miss the same key at the same time, only one of them
+ * calls {@link #createObject(Object)}, the others wait for its result.
+ * {@link #getAll(Collection)} creates all the missing objects of several keys
+ * with a single call to {@link #createObjects(Collection)}.
+ * 
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the cached objects
+ */
+public abstract class Cache<K, V> {
+	/**
+	 * Default number of segments of a cache.
+	 */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	private volatile Segment<K, V>[] segments;
+	private final ConcurrentHashMap<K, FutureTask<V>> loading;
+	private final int capacity;
+
+	/**
+	 * Incremented by {@link #clear()}, before the segments are replaced. An
+	 * object created before a clear is not cached after it.
+	 */
+	private volatile int generation = 0;
+
+	public Cache(int capacity) {
+		this(capacity, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Cache(int capacity, int concurrencyLevel) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity should be positive");
+
+		int count = 1;
+
+		//
+		// Each segment holds at least one object.
+		//
+		while (count < concurrencyLevel && (count << 1) <= capacity)
+			count <<= 1;
+
+		this.capacity = capacity;
+		this.loading = new ConcurrentHashMap<K, FutureTask<V>>();
+		this.segments = new Segment[count];
+
+		//
+		// The remainder is spread over the first segments, so that the
+		// capacities of the segments add up to the capacity of the cache.
+		//
+		for (int i = 0; i < count; i++)
+			segments[i] = new Segment<K, V>(capacity / count
+					+ (i < capacity % count ? 1 : 0));
+	}
+
+	/**
+	 * Drop all the objects. The segments are replaced by empty ones, so the
+	 * time needed does not depend on the number of objects. The statistics
+	 * are kept. Objects being created while the cache is cleared are not
+	 * cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void clear() {
+		generation++;
+
+		Segment<K, V>[] old = segments;
+		Segment<K, V>[] empty = new Segment[old.length];
+
+		for (int i = 0; i < old.length; i++)
+			empty[i] = new Segment<K, V>(old[i]);
+
+		segments = empty;
+		loading.clear();
+	}
+
+	/**
+	 * Maximum number of objects the cache can hold.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public V get(K key) throws CacheCreationException {
+		V value = segmentFor(key).lookup(key);
+
+		if (value == null)
+			value = load(key);
+
+		return value;
+	}
+
+	/**
+	 * Get the objects of several keys. The missing keys are created together
+	 * by {@link #createObjects(Collection)}, and the new objects are inserted
+	 * at once: the segments receiving them are all locked during the
+	 * insertion, so other threads see either none or all of them. Keys being
+	 * loaded by other threads are waited for.
+	 * 
+	 * @return the objects found, keys without object are not in the map
+	 * @throws CacheCreationException
+	 *             if the creation of the missing objects fails
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys)
+			throws CacheCreationException {
+		int gen = generation;
+		HashMap<K, V> values = new HashMap<K, V>();
+		LinkedHashMap<K, BulkTask<V>> owned = new LinkedHashMap<K, BulkTask<V>>();
+		HashMap<K, FutureTask<V>> awaited = new HashMap<K, FutureTask<V>>();
+
+		for (K key : keys) {
+			if (values.containsKey(key) || owned.containsKey(key)
+					|| awaited.containsKey(key))
+				continue;
+
+			V value = segmentFor(key).lookup(key);
+
+			if (value != null) {
+				values.put(key, value);
+				continue;
+			}
+
+			BulkTask<V> task = new BulkTask<V>();
+			FutureTask<V> f = loading.putIfAbsent(key, task);
+
+			if (f == null)
+				owned.put(key, task);
+			else
+				awaited.put(key, f);
+		}
+
+		if (owned.size() > 0)
+			loadAll(owned, values, gen);
+
+		for (Map.Entry<K, FutureTask<V>> e : awaited.entrySet()) {
+			try {
+				values.put(e.getKey(), e.getValue().get());
+			} catch (ExecutionException ex) {
+				if (!(ex.getCause() instanceof CacheCreationException))
+					throw new CacheCreationException(ex.getCause());
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new CacheCreationException(ex);
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Number of lookups which found their object in the cache.
+	 */
+	public long getHitCount() {
+		long n = 0;
+
+		for (Segment<K, V> s : segments)
+			n += s.hits;
+
+		return n;
+	}
+
+	/**
+	 * Number of lookups which had to create their object.
+	 */
+	public long getMissCount() {
+		long n = 0;
+
+		for (Segment<K, V> s : segments)
+			n += s.misses;
+
+		return n;
+	}
+
+	/**
+	 * Number of objects removed to make room for new ones.
+	 */
+	public long getEvictionCount() {
+		long n = 0;
+
+		for (Segment<K, V> s : segments)
+			n += s.evictions;
+
+		return n;
+	}
+
+	/**
+	 * Number of objects currently in the cache.
+	 */
+	public int size() {
+		int n = 0;
+
+		for (Segment<K, V> s : segments)
+			n += s.count();
+
+		return n;
+	}
+
+	public boolean has(K key) {
+		return segmentFor(key).contains(key);
+	}
+
+	public void put(K key, V value) {
+		segmentFor(key).put(key, value);
+	}
+
+	public void revokeKey(K key) {
+		Segment<K, V> s = segmentFor(key);
+
+		s.lock();
+
+		try {
+			s.remove(key);
+			loading.remove(key);
+		} finally {
+			s.unlock();
+		}
+	}
+
+	/**
+	 * Revoke several keys at once. Keys are grouped by segment, so that each
+	 * segment is locked once whatever the number of keys.
+	 */
+	@SuppressWarnings("unchecked")
+	public void revokeKeys(Collection<? extends K> keys) {
+		Segment<K, V>[] segments = this.segments;
+		ArrayList<K>[] groups = new ArrayList[segments.length];
+
+		for (K key : keys) {
+			int i = indexFor(key);
+
+			if (groups[i] == null)
+				groups[i] = new ArrayList<K>();
+
+			groups[i].add(key);
+		}
+
+		for (int i = 0; i < groups.length; i++) {
+			if (groups[i] == null)
+				continue;
+
+			Segment<K, V> s = segments[i];
+
+			s.lock();
+
+			try {
+				for (K key : groups[i]) {
+					s.remove(key);
+					loading.remove(key);
+				}
+			} finally {
+				s.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Move the object cached under a key to another key, for example when the
+	 * identifier of the object has changed. An object cached under the new
+	 * key is dropped. The other entries of the cache are kept.
+	 * 
+	 * @param oldKey
+	 *            the key the object is cached under
+	 * @param newKey
+	 *            the key the object should be cached under
+	 * @return true if an object has been moved, false if nothing was cached
+	 *         under the old key
+	 */
+	public boolean rekey(K oldKey, K newKey) {
+		Segment<K, V> from = segmentFor(oldKey);
+		Segment<K, V> to = segmentFor(newKey);
+		V value;
+
+		from.lock();
+
+		try {
+			value = from.remove(oldKey);
+			loading.remove(oldKey);
+		} finally {
+			from.unlock();
+		}
+
+		to.lock();
+
+		try {
+			loading.remove(newKey);
+
+			if (value == null)
+				to.remove(newKey);
+			else
+				to.put(newKey, value);
+		} finally {
+			to.unlock();
+		}
+
+		return value != null;
+	}
+
+	protected abstract V createObject(K key) throws CacheCreationException;
+
+	/**
+	 * Create the objects of several keys. The default implementation calls
+	 * {@link #createObject(Object)} for each key, caches able to resolve
+	 * several keys at once should override it.
+	 * 
+	 * @return the objects created, keys without object are not in the map
+	 */
+	protected Map<K, V> createObjects(Collection<K> keys)
+			throws CacheCreationException {
+		HashMap<K, V> objects = new HashMap<K, V>();
+
+		for (K key : keys) {
+			try {
+				V value = createObject(key);
+
+				if (value != null)
+					objects.put(key, value);
+			} catch (CacheCreationException e) {
+				// Not part of the result
+			}
+		}
+
+		return objects;
+	}
+
+	/**
+	 * Create and cache the objects of keys this thread is loading, then
+	 * complete their loading tasks so that threads waiting for them get the
+	 * objects. Tasks still pending when an error is thrown are failed, their
+	 * waiters would wait forever otherwise.
+	 */
+	private void loadAll(Map<K, BulkTask<V>> owned, Map<K, V> values, int gen)
+			throws CacheCreationException {
+		try {
+			ArrayList<K> missing = new ArrayList<K>(owned.size());
+			Map<K, V> created;
+
+			try {
+				//
+				// Keys may have been cached by other threads since the
+				// lookup.
+				//
+				for (K key : owned.keySet()) {
+					V value = segmentFor(key).peek(key);
+
+					if (value == null)
+						missing.add(key);
+					else
+						values.put(key, value);
+				}
+
+				created = missing.size() == 0 ? new HashMap<K, V>()
+						: createObjects(missing);
+			} catch (CacheCreationException e) {
+				failAll(owned, e);
+				throw e;
+			} catch (RuntimeException e) {
+				failAll(owned, e);
+				throw new CacheCreationException(e);
+			}
+
+			for (K key : missing) {
+				V value = created.get(key);
+
+				if (value != null)
+					values.put(key, value);
+			}
+
+			storeAll(owned, values, gen);
+
+			for (Map.Entry<K, BulkTask<V>> e : owned.entrySet()) {
+				V value = values.get(e.getKey());
+
+				if (value == null)
+					e.getValue().fail(
+							new CacheCreationException("No object for '%s'",
+									e.getKey()));
+				else
+					e.getValue().complete(value);
+
+				loading.remove(e.getKey(), e.getValue());
+			}
+		} finally {
+			//
+			// Completed tasks are left as they are.
+			//
+			failAll(owned, new IllegalStateException("bulk loading failed"));
+		}
+	}
+
+	private void failAll(Map<K, BulkTask<V>> owned, Throwable cause) {
+		for (Map.Entry<K, BulkTask<V>> e : owned.entrySet()) {
+			e.getValue().fail(cause);
+			loading.remove(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Cache the objects of keys loaded together. The segments involved are
+	 * locked in the order of their index, and all at once, so the objects
+	 * appear together. Keys revoked while they were loaded, and objects
+	 * loaded before a clear, are not cached.
+	 * 
+	 * @param gen
+	 *            generation of the cache when the loading started
+	 */
+	@SuppressWarnings("unchecked")
+	private void storeAll(Map<K, BulkTask<V>> owned, Map<K, V> values,
+			int gen) {
+		Segment<K, V>[] segments = this.segments;
+		ArrayList<K>[] groups = new ArrayList[segments.length];
+
+		for (K key : owned.keySet()) {
+			if (!values.containsKey(key))
+				continue;
+
+			int i = indexFor(key);
+
+			if (groups[i] == null)
+				groups[i] = new ArrayList<K>();
+
+			groups[i].add(key);
+		}
+
+		int locked = 0;
+
+		try {
+			for (; locked < groups.length; locked++)
+				if (groups[locked] != null)
+					segments[locked].lock();
+
+			//
+			// The segments are read before the generation, so segments
+			// installed by a clear are never written with older objects.
+			//
+			if (generation != gen)
+				return;
+
+			for (int i = 0; i < groups.length; i++) {
+				if (groups[i] == null)
+					continue;
+
+				for (K key : groups[i])
+					if (loading.get(key) == owned.get(key))
+						segments[i].put(key, values.get(key));
+			}
+		} finally {
+			while (--locked >= 0)
+				if (groups[locked] != null)
+					segments[locked].unlock();
+		}
+	}
+
+	/**
+	 * Load the object associated with a missing key. If another thread is
+	 * already loading the same key, its result is used. Only the thread
+	 * running the loading task removes it, once the object is cached: a
+	 * waiter removing it first would keep the object out of the cache.
+	 */
+	private V load(final K key) throws CacheCreationException {
+		FutureTask<V> f = loading.get(key);
+
+		if (f == null) {
+			int gen = generation;
+			FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+				public V call() throws Exception {
+					V value = segmentFor(key).peek(key);
+					return value == null ? createObject(key) : value;
+				}
+			});
+
+			f = loading.putIfAbsent(key, task);
+
+			if (f == null) {
+				f = task;
+				task.run();
+				store(key, task, gen);
+			}
+		}
+
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CacheCreationException)
+				throw (CacheCreationException) e.getCause();
+
+			throw new CacheCreationException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheCreationException(e);
+		}
+	}
+
+	/**
+	 * Cache the result of a completed loading task, and remove the task. The
+	 * key may have been revoked, or the cache cleared, while the object was
+	 * created, in this case the object is not cached.
+	 * 
+	 * @param gen
+	 *            generation of the cache when the loading started
+	 */
+	private void store(K key, FutureTask<V> task, int gen) {
+		Segment<K, V> s = segmentFor(key);
+		V value = null;
+
+		try {
+			value = task.get();
+		} catch (ExecutionException e) {
+			// Not cached
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		s.lock();
+
+		try {
+			if (value != null && generation == gen
+					&& loading.get(key) == task)
+				s.put(key, value);
+
+			loading.remove(key, task);
+		} finally {
+			s.unlock();
+		}
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		return segments[indexFor(key)];
+	}
+
+	private int indexFor(K key) {
+		int h = key.hashCode();
+
+		//
+		// Spread the bits of the hash so that keys with close hash codes do
+		// not end in the same segment.
+		//
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+
+		return h & (segments.length - 1);
+	}
+
+	/**
+	 * A loading task completed by {@link Cache#getAll(Collection)} rather than
+	 * run.
+	 */
+	private static class BulkTask<V> extends FutureTask<V> {
+		BulkTask() {
+			super(new Callable<V>() {
+				public V call() {
+					throw new IllegalStateException("loaded in bulk");
+				}
+			});
+		}
+
+		void complete(V value) {
+			set(value);
+		}
+
+		void fail(Throwable cause) {
+			setException(cause);
+		}
+	}
+
+	/**
+	 * A part of the cache. The map is kept in access order, so the eldest
+	 * entry is always the least recently used one. Statistics are updated
+	 * under the lock of the segment, they may be slightly late when read.
+	 */
+	private static class Segment<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = -3418424796128372437L;
+
+		private final ReentrantLock lock;
+		private final int capacity;
+
+		volatile long hits;
+		volatile long misses;
+		volatile long evictions;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+
+			this.lock = new ReentrantLock();
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Create an empty segment replacing another one, with its capacity
+		 * and its statistics.
+		 */
+		Segment(Segment<K, V> replaced) {
+			this(replaced.capacity);
+
+			this.hits = replaced.hits;
+			this.misses = replaced.misses;
+			this.evictions = replaced.evictions;
+		}
+
+		V lookup(K key) {
+			lock();
+
+			try {
+				V value = super.get(key);
+
+				if (value == null)
+					misses++;
+				else
+					hits++;
+
+				return value;
+			} finally {
+				unlock();
+			}
+		}
+
+		/**
+		 * Same as {@link #lookup(Object)}, but the statistics are not
+		 * updated.
+		 */
+		V peek(K key) {
+			lock();
+
+			try {
+				return super.get(key);
+			} finally {
+				unlock();
+			}
+		}
+
+		int count() {
+			lock();
+
+			try {
+				return size();
+			} finally {
+				unlock();
+			}
+		}
+
+		boolean contains(K key) {
+			lock();
+
+			try {
+				return containsKey(key);
+			} finally {
+				unlock();
+			}
+		}
+
+		@Override
+		public V put(K key, V value) {
+			lock();
+
+			try {
+				return super.put(key, value);
+			} finally {
+				unlock();
+			}
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				evictions++;
+				return true;
+			}
+
+			return false;
+		}
+
+		void lock() {
+			lock.lock();
+		}
+
+		void unlock() {
+			lock.unlock();
+		}
+	}
+}
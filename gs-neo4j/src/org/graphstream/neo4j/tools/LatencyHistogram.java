@@ -0,0 +1,122 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with power-of-two buckets. Recording a value costs
+ * a few atomic increments and never allocates, so histograms can be left on
+ * in hot paths. Percentiles are approximated by the upper bound of the bucket
+ * they fall in, that is within a factor of two.
+ */
+public class LatencyHistogram {
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong total;
+
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(64);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+	}
+
+	/**
+	 * Record a duration, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+
+		//
+		// Bucket i holds the durations between 2^i and 2^(i+1) - 1, zero
+		// being counted in the first bucket.
+		//
+		buckets.incrementAndGet(Math.max(0,
+				63 - Long.numberOfLeadingZeros(nanos)));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+	}
+
+	/**
+	 * Number of recorded durations.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Mean of the recorded durations, in nanoseconds.
+	 */
+	public long getMean() {
+		long c = count.get();
+		return c == 0 ? 0 : total.get() / c;
+	}
+
+	/**
+	 * Approximate percentile of the recorded durations, in nanoseconds.
+	 * 
+	 * @param p
+	 *            the percentile, between 0 and 100
+	 */
+	public long getPercentile(double p) {
+		long[] snapshot = new long[buckets.length()];
+		long c = 0;
+
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			c += snapshot[i];
+		}
+
+		if (c == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(c * p / 100.0);
+		long seen = 0;
+
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+
+			if (seen >= rank && snapshot[i] > 0)
+				return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+		}
+
+		return Long.MAX_VALUE;
+	}
+
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++)
+			buckets.set(i, 0);
+
+		count.set(0);
+		total.set(0);
+	}
+}
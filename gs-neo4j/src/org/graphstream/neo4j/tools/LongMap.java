@@ -0,0 +1,270 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j.tools;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A hash map with primitive long keys. Keys are stored in a plain long array
+ * with open addressing, so neither lookups nor insertions box the key or
+ * allocate an entry. Null values are not allowed.
+ * 
+ * Reads can be done by several threads at the same time, writes are
+ * exclusive.
+ * 
+ * @param <V>
+ *            type of the values
+ */
+public class LongMap<V> {
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int threshold;
+
+	private final ReentrantReadWriteLock lock;
+
+	public LongMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Create a map able to hold a given number of entries without growing.
+	 */
+	public LongMap(int expectedSize) {
+		this.lock = new ReentrantReadWriteLock();
+		allocate(tableSize(expectedSize));
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		lock.readLock().lock();
+
+		try {
+			int i = indexOf(key);
+			return i < 0 ? null : (V) values[i];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Associate a value with a key.
+	 * 
+	 * @return the previous value, or null if there was none
+	 */
+	public V put(long key, V value) {
+		return put(key, value, true);
+	}
+
+	/**
+	 * Associate a value with a key, unless the key is already mapped.
+	 * 
+	 * @return the current value, or null if the value has been inserted
+	 */
+	public V putIfAbsent(long key, V value) {
+		return put(key, value, false);
+	}
+
+	/**
+	 * Remove the value associated with a key.
+	 * 
+	 * @return the removed value, or null if the key was not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		lock.writeLock().lock();
+
+		try {
+			int i = indexOf(key);
+
+			if (i < 0)
+				return null;
+
+			V old = (V) values[i];
+			delete(i);
+
+			return old;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+
+		try {
+			allocate(MIN_CAPACITY);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V put(long key, V value, boolean replace) {
+		if (value == null)
+			throw new NullPointerException("null values are not allowed");
+
+		lock.writeLock().lock();
+
+		try {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+
+			while (values[i] != null) {
+				if (keys[i] == key) {
+					V old = (V) values[i];
+
+					if (replace)
+						values[i] = value;
+
+					return old;
+				}
+
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			values[i] = value;
+
+			if (++size > threshold)
+				rehash(keys.length << 1);
+
+			return null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+
+		while (values[i] != null) {
+			if (keys[i] == key)
+				return i;
+
+			i = (i + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Empty a slot, moving back the following entries of its cluster so that
+	 * no probe sequence is broken. This avoids tombstones.
+	 */
+	private void delete(int i) {
+		int mask = keys.length - 1;
+		int j = i;
+
+		values[i] = null;
+		size--;
+
+		while (true) {
+			j = (j + 1) & mask;
+
+			if (values[j] == null)
+				return;
+
+			int k = hash(keys[j]) & mask;
+
+			//
+			// The entry at j can fill the hole at i only if its natural slot
+			// k is not cyclically in (i, j].
+			//
+			if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j))
+				continue;
+
+			keys[i] = keys[j];
+			values[i] = values[j];
+			values[j] = null;
+			i = j;
+		}
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+
+		allocate(capacity);
+
+		int mask = capacity - 1;
+
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = hash(oldKeys[j]) & mask;
+
+				while (values[i] != null)
+					i = (i + 1) & mask;
+
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				size++;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		size = 0;
+		threshold = capacity / 4 * 3;
+	}
+
+	private static int tableSize(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+
+		while (capacity / 4 * 3 < expectedSize)
+			capacity <<= 1;
+
+		return capacity;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
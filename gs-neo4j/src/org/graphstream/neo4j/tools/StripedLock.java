@@ -0,0 +1,124 @@
+/*
+ * Copyright 2006 - 2013
+ *      Stefan Balev       <stefan.balev@graphstream-project.org>
+ *      Julien Baudry	<julien.baudry@graphstream-project.org>
+ *      Antoine Dutot	<antoine.dutot@graphstream-project.org>
+ *      Yoann Pigné	<yoann.pigne@graphstream-project.org>
+ *      Guilhelm Savin	<guilhelm.savin@graphstream-project.org>
+ *  
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ * 
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.neo4j.tools;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by an unbounded set of keys. Each key is mapped
+ * to one of the locks by its hash code, so threads working on different keys
+ * rarely wait for each other, while the memory used does not depend on the
+ * number of keys.
+ * 
+ * Several keys are locked in the order of their locks, so that threads
+ * locking overlapping sets of keys can not deadlock. Locks are reentrant.
+ */
+public class StripedLock {
+	/**
+	 * Default number of locks.
+	 */
+	public static final int DEFAULT_STRIPES = 64;
+
+	private final ReentrantLock[] locks;
+
+	public StripedLock() {
+		this(DEFAULT_STRIPES);
+	}
+
+	public StripedLock(int stripes) {
+		int count = 1;
+
+		while (count < stripes)
+			count <<= 1;
+
+		locks = new ReentrantLock[count];
+
+		for (int i = 0; i < count; i++)
+			locks[i] = new ReentrantLock();
+	}
+
+	/**
+	 * Lock several keys. Keys sharing a lock are only locked once.
+	 */
+	public void lock(Object... keys) {
+		int[] stripes = stripes(keys);
+
+		for (int i = 0; i < stripes.length; i++)
+			if (i == 0 || stripes[i] != stripes[i - 1])
+				locks[stripes[i]].lock();
+	}
+
+	/**
+	 * Unlock keys locked by {@link #lock(Object...)}.
+	 */
+	public void unlock(Object... keys) {
+		int[] stripes = stripes(keys);
+
+		for (int i = stripes.length - 1; i >= 0; i--)
+			if (i == 0 || stripes[i] != stripes[i - 1])
+				locks[stripes[i]].unlock();
+	}
+
+	/**
+	 * Lock all the keys, for an operation on the whole set.
+	 */
+	public void lockAll() {
+		for (int i = 0; i < locks.length; i++)
+			locks[i].lock();
+	}
+
+	public void unlockAll() {
+		for (int i = locks.length - 1; i >= 0; i--)
+			locks[i].unlock();
+	}
+
+	private int[] stripes(Object[] keys) {
+		int[] stripes = new int[keys.length];
+
+		for (int i = 0; i < keys.length; i++)
+			stripes[i] = indexOf(keys[i]);
+
+		Arrays.sort(stripes);
+		return stripes;
+	}
+
+	private int indexOf(Object key) {
+		int h = key.hashCode();
+
+		//
+		// Spread the bits of the hash, as in Cache.
+		//
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+
+		return h & (locks.length - 1);
+	}
+}
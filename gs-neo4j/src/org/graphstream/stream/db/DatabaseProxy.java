@@ -33,7 +33,16 @@ import org.graphstream.stream.Pipe;
 
 public interface DatabaseProxy extends Pipe {
 	public static enum Mode {
-		READ_ONLY, WRITE_ONLY, READ_WRITE
+		READ_ONLY, WRITE_ONLY, READ_WRITE,
+		/**
+		 * Write only mode used to seed a store with a large amount of data.
+		 * Writes are not transactional and the store can not be read before
+		 * the proxy is disconnected. Disconnecting ends the load and closes
+		 * the store, which can then be connected in any other mode. A store
+		 * with a change log or a history can not be bulk loaded: they would
+		 * miss the loaded elements, and can not be rebuilt from the store.
+		 */
+		BULK_LOAD
 	}
 	
 	/**